@@ -0,0 +1,198 @@
+package com.example.webshop.config;
+
+import com.example.webshop.storage.BlobStore;
+import com.example.webshop.storage.BlobStores;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Премества байтовете на снимките и вариантите между хранилищата: стартира се с
+ * {@code --app.storage.migrate-to=s3} (или fs/db). Онлайн, на фонова нишка, ред по ред –
+ * копие в новото хранилище, ред сочещ към него, изтриване от старото след commit.
+ * Редовете отпреди хранилищата (bytea в item_image) също се изнасят. Споделеното съдържание
+ * ({@code image_blob}) се мести по хеш, заедно с всички снимки, които сочат към него. Идемпотентна.
+ * Обикновено се комбинира с {@code app.storage.backend} със същата стойност.
+ */
+@Component
+public class BlobStoreMigrator {
+
+    private static final Logger log = LoggerFactory.getLogger(BlobStoreMigrator.class);
+    private static final int BATCH_SIZE = 50;
+    private static final long PAUSE_MS = 100;
+
+    private final String target;
+    private final BlobStores blobStores;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "blob-store-migrator");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public BlobStoreMigrator(@Value("${app.storage.migrate-to:}") String target, BlobStores blobStores,
+                             JdbcTemplate jdbc, TransactionTemplate transactionTemplate) {
+        this.target = target;
+        this.blobStores = blobStores;
+        this.jdbc = jdbc;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (target.isBlank()) {
+            return;
+        }
+        BlobStore store = blobStores.byName(target); // непознато име – грешка още при старта
+        executor.execute(() -> {
+            int images = migrateTable("item_image", "images/", store);
+            int variants = migrateTable("item_image_variant", "variants/", store);
+            int blobs = migrateSharedBlobs(store);
+            log.info("Blob migration to '{}' finished: {} image(s), {} variant(s), {} shared blob(s)",
+                    target, images, variants, blobs);
+        });
+    }
+
+    /** Всички собствени (не споделени) blob-ове от {@code table}, които не са в {@code store}, по id на партиди. */
+    private int migrateTable(String table, String keyPrefix, BlobStore store) {
+        long afterId = 0;
+        int moved = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Long> ids = jdbc.queryForList("SELECT id FROM " + table
+                                + " WHERE id > ? AND (storage IS NULL OR storage <> ?)"
+                                + " AND (storage_key IS NULL OR storage_key NOT LIKE 'blobs/%') ORDER BY id LIMIT ?",
+                        Long.class, afterId, store.name(), BATCH_SIZE);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                for (Long id : ids) {
+                    if (migrateRow(table, keyPrefix, id, store)) {
+                        moved++;
+                    }
+                }
+                afterId = ids.get(ids.size() - 1);
+                Thread.sleep(PAUSE_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Blob migration of {} stopped after {} row(s): {}", table, moved, e.getMessage());
+        }
+        return moved;
+    }
+
+    private boolean migrateRow(String table, String keyPrefix, Long id, BlobStore store) {
+        Boolean done = transactionTemplate.execute(status -> {
+            List<Map<String, Object>> rows = jdbc.queryForList(
+                    "SELECT storage, storage_key, mime_type, data FROM " + table + " WHERE id = ? FOR UPDATE", id);
+            if (rows.isEmpty()) {
+                return false;
+            }
+            Map<String, Object> row = rows.get(0);
+            String storage = (String) row.get("storage");
+            String key = (String) row.get("storage_key");
+            if (store.name().equals(storage)) {
+                return false;
+            }
+            Optional<byte[]> bytes = blobStores.read(storage, key, (byte[]) row.get("data"));
+            if (bytes.isEmpty()) {
+                log.warn("Blob migration: {} #{} has no bytes in '{}', skipped", table, id, storage);
+                return false;
+            }
+            String newKey = key != null ? key : keyPrefix + "legacy/" + id;
+            try {
+                // При rollback копието в новото хранилище се трие – иначе остава без ред
+                blobStores.putTo(store, newKey, new ByteArrayInputStream(bytes.get()), bytes.get().length,
+                        (String) row.get("mime_type"));
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot write " + newKey + " to " + store.name(), e);
+            }
+            jdbc.update("UPDATE " + table + " SET storage = ?, storage_key = ?, data = NULL WHERE id = ?",
+                    store.name(), newKey, id);
+            // Старият blob – едва след като редът сочи към новия
+            blobStores.deleteAfterCommit(storage, key);
+            return true;
+        });
+        return Boolean.TRUE.equals(done);
+    }
+
+    /** Редовете на {@code image_blob}, които не са в {@code store}, по хеш на партиди. */
+    private int migrateSharedBlobs(BlobStore store) {
+        String afterHash = "";
+        int moved = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<String> hashes = jdbc.queryForList("SELECT hash FROM image_blob WHERE hash > ? AND storage <> ? "
+                        + "ORDER BY hash LIMIT ?", String.class, afterHash, store.name(), BATCH_SIZE);
+                if (hashes.isEmpty()) {
+                    break;
+                }
+                for (String hash : hashes) {
+                    if (migrateSharedBlob(hash, store)) {
+                        moved++;
+                    }
+                }
+                afterHash = hashes.get(hashes.size() - 1);
+                Thread.sleep(PAUSE_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Blob migration of image_blob stopped after {} row(s): {}", moved, e.getMessage());
+        }
+        return moved;
+    }
+
+    /** Ключът остава същият – сменя се само хранилището в image_blob и в снимките с този ключ. */
+    private boolean migrateSharedBlob(String hash, BlobStore store) {
+        Boolean done = transactionTemplate.execute(status -> {
+            List<Map<String, Object>> rows = jdbc.queryForList(
+                    "SELECT storage, storage_key, mime_type FROM image_blob WHERE hash = ? FOR UPDATE", hash);
+            if (rows.isEmpty()) {
+                return false;
+            }
+            String storage = (String) rows.get(0).get("storage");
+            String key = (String) rows.get(0).get("storage_key");
+            if (store.name().equals(storage)) {
+                return false;
+            }
+            Optional<byte[]> bytes = blobStores.read(storage, key, null);
+            if (bytes.isEmpty()) {
+                log.warn("Blob migration: image_blob {} has no bytes in '{}', skipped", hash, storage);
+                return false;
+            }
+            try {
+                blobStores.putTo(store, key, new ByteArrayInputStream(bytes.get()), bytes.get().length,
+                        (String) rows.get(0).get("mime_type"));
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot write " + key + " to " + store.name(), e);
+            }
+            jdbc.update("UPDATE image_blob SET storage = ? WHERE hash = ?", store.name(), hash);
+            jdbc.update("UPDATE item_image SET storage = ? WHERE storage_key = ?", store.name(), key);
+            blobStores.deleteAfterCommit(storage, key);
+            return true;
+        });
+        return Boolean.TRUE.equals(done);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.webshop.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.time.Duration;
+import java.util.OptionalLong;
+
+/**
+ * Регионите на Hibernate second-level cache (JCache върху Caffeine, в паметта на процеса).
+ * Всеки регион е ограничен по брой и с TTL – TTL-ът е и горната граница на остаряването
+ * при няколко инстанции (записите изчистват само локалния кеш).
+ * Статистиката по региони е в /actuator/metrics/hibernate.second.level.cache.requests?tag=region:item.
+ */
+@Configuration
+public class HibernateCacheConfig {
+
+    public static final String ITEM_REGION = "item";
+    public static final String USER_REGION = "user";
+    /** Query cache на keyset страниците на каталога – чисти се и при JDBC вмъкване. */
+    public static final String ITEM_PAGE_REGION = "item-page";
+    private static final String QUERY_RESULTS_REGION = "default-query-results-region";
+    private static final String UPDATE_TIMESTAMPS_REGION = "default-update-timestamps-region";
+
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager(
+            @Value("${app.cache.item.max-entries:10000}") long itemMaxEntries,
+            @Value("${app.cache.item.ttl:10m}") Duration itemTtl,
+            @Value("${app.cache.user.max-entries:10000}") long userMaxEntries,
+            @Value("${app.cache.user.ttl:10m}") Duration userTtl,
+            @Value("${app.cache.query.max-entries:10000}") long queryMaxEntries,
+            @Value("${app.cache.query.ttl:5m}") Duration queryTtl) {
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(provider.getDefaultURI(), getClass().getClassLoader());
+        cacheManager.createCache(ITEM_REGION, region(itemMaxEntries, itemTtl));
+        cacheManager.createCache(USER_REGION, region(userMaxEntries, userTtl));
+        cacheManager.createCache(QUERY_RESULTS_REGION, region(queryMaxEntries, queryTtl));
+        cacheManager.createCache(ITEM_PAGE_REGION, region(queryMaxEntries, queryTtl));
+        // По един запис на таблица; не бива да изтича по-рано от резултатите на заявките
+        cacheManager.createCache(UPDATE_TIMESTAMPS_REGION, region(0, null));
+        return cacheManager;
+    }
+
+    /** Hibernate използва същия CacheManager; регион без конфигурация спира старта (missing_cache_strategy=fail). */
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheManagerCustomizer(CacheManager hibernateCacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+    }
+
+    private static CaffeineConfiguration<Object, Object> region(long maxEntries, Duration ttl) {
+        CaffeineConfiguration<Object, Object> config = new CaffeineConfiguration<>();
+        if (maxEntries > 0) {
+            config.setMaximumSize(OptionalLong.of(maxEntries));
+        }
+        if (ttl != null) {
+            config.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+        }
+        // Записите на Hibernate са immutable – без копиране при всяко четене
+        config.setStoreByValue(false);
+        config.setStatisticsEnabled(true);
+        return config;
+    }
+}
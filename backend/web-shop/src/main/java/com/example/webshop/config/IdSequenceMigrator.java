@@ -0,0 +1,90 @@
+package com.example.webshop.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Преминаване от IDENTITY към pooled sequences ({@code <таблица>_seq}, стъпка {@value #ALLOCATION_SIZE}
+ * = allocationSize в entity-тата). За всяка таблица, идемпотентно:
+ * <ol>
+ *   <li>sequence-ът се създава, ако Hibernate (ddl-auto) още не го е създал;</li>
+ *   <li>IDENTITY се маха от {@code id} и default-ът става nextval – JDBC INSERT-ите
+ *       (item_image, импортът) вземат id от същия sequence;</li>
+ *   <li>sequence-ът се изравнява с {@code MAX(id)}; никога не се връща назад, за да не
+ *       преиздаде блок, който друга инстанция вече е резервирала.</li>
+ * </ol>
+ * Изпълнява се след schema update на Hibernate и преди Tomcat да приеме заявки
+ * (ApplicationRunner-ите идват след това), всяка команда в своя autocommit.
+ */
+@Component
+public class IdSequenceMigrator implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(IdSequenceMigrator.class);
+
+    static final int ALLOCATION_SIZE = 50;
+
+    private static final List<String> TABLES = List.of(
+            "item", "item_image", "item_image_variant", "item_orders", "messages", "orders", "order_item",
+            "reviews", "favorites", "cart_item", "users", "vip_payments");
+
+    private final JdbcTemplate jdbc;
+
+    public IdSequenceMigrator(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        for (String table : TABLES) {
+            String sequence = table + "_seq";
+            execute("CREATE SEQUENCE IF NOT EXISTS " + sequence + " START WITH 1 INCREMENT BY " + ALLOCATION_SIZE);
+            if (!execute("ALTER TABLE " + table + " ALTER COLUMN id DROP IDENTITY IF EXISTS")) {
+                execute("ALTER TABLE " + table + " ALTER COLUMN id DROP IDENTITY"); // H2 – без IF EXISTS
+            }
+            execute("ALTER TABLE " + table + " ALTER COLUMN id SET DEFAULT nextval('" + sequence + "')");
+            seed(table, sequence);
+        }
+    }
+
+    /**
+     * Pooled: nextval = v запазва id-тата (v - 50, v], затова е достатъчно sequence-ът да е поне MAX(id).
+     */
+    private void seed(String table, String sequence) {
+        long maxId;
+        try {
+            Long max = jdbc.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + table, Long.class);
+            maxId = max == null ? 0 : max;
+        } catch (Exception e) {
+            log.warn("Sequence seed skipped for {}: {}", table, e.getMessage());
+            return;
+        }
+        try {
+            // PostgreSQL
+            Long value = jdbc.queryForObject("SELECT setval('" + sequence + "', GREATEST(?, "
+                    + "(SELECT last_value FROM " + sequence + "), 1))", Long.class, maxId);
+            log.info("Sequence {} at {} (max id {})", sequence, value, maxId);
+        } catch (Exception e) {
+            // H2 (локално): без setval – RESTART само ако следващият блок би застъпил съществуващи id-та
+            Long next = jdbc.queryForObject("SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES "
+                    + "WHERE LOWER(SEQUENCE_NAME) = ?", Long.class, sequence);
+            if (maxId > 0 && next != null && next - ALLOCATION_SIZE < maxId) {
+                execute("ALTER SEQUENCE " + sequence + " RESTART WITH " + (maxId + ALLOCATION_SIZE));
+            }
+        }
+    }
+
+    private boolean execute(String sql) {
+        try {
+            jdbc.execute(sql);
+            return true;
+        } catch (Exception e) {
+            log.debug("Sequence migration step skipped: {} -> {}", sql, e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.webshop.config;
+
+import com.example.webshop.repositories.ItemRepository;
+import com.example.webshop.services.ItemChangedEvent;
+import com.example.webshop.services.ItemImageService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Онлайн миграция на base64 снимките от {@code item.image_url} към {@code item_image}.
+ * Тръгва на фонова нишка след старта, обработва обявите на партиди по id и всяка
+ * обява в отделна транзакция, така че приложението обслужва заявки през цялото време
+ * (raw endpoint-ът чете и двата формата). Идемпотентна – при следващ старт продължава.
+ */
+@Component
+public class ItemImageMigrator {
+
+    private static final Logger log = LoggerFactory.getLogger(ItemImageMigrator.class);
+    private static final int BATCH_SIZE = 20;
+    /** Пауза между партидите – да не натоварваме базата докато тече трафик. */
+    private static final long PAUSE_MS = 200;
+
+    private final JdbcTemplate jdbc;
+    private final ItemRepository itemRepository;
+    private final ItemImageService itemImageService;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher events;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "item-image-migrator");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ItemImageMigrator(JdbcTemplate jdbc, ItemRepository itemRepository, ItemImageService itemImageService,
+                             TransactionTemplate transactionTemplate, ApplicationEventPublisher events) {
+        this.jdbc = jdbc;
+        this.itemRepository = itemRepository;
+        this.itemImageService = itemImageService;
+        this.transactionTemplate = transactionTemplate;
+        this.events = events;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor.execute(this::migrate);
+    }
+
+    void migrate() {
+        long afterId = 0;
+        int migrated = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                // Само id-та – самите LOB-ове се четат по един в транзакцията на обявата
+                List<Long> ids = jdbc.queryForList(
+                        "SELECT id FROM item WHERE id > ? AND image_url IS NOT NULL ORDER BY id LIMIT ?",
+                        Long.class, afterId, BATCH_SIZE);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                for (Long id : ids) {
+                    if (migrateItem(id)) {
+                        migrated++;
+                    }
+                }
+                afterId = ids.get(ids.size() - 1);
+                Thread.sleep(PAUSE_MS);
+            }
+            log.info("Image migration finished: {} item(s) moved to item_image", migrated);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Image migration stopped after {} item(s): {}", migrated, e.getMessage());
+        }
+    }
+
+    private boolean migrateItem(Long id) {
+        Boolean changed = transactionTemplate.execute(status -> itemRepository.findById(id)
+                .map(item -> {
+                    if (!itemImageService.drainInlineImages(item)) {
+                        return false;
+                    }
+                    itemRepository.save(item);
+                    events.publishEvent(ItemChangedEvent.saved(item));
+                    return true;
+                })
+                .orElse(false));
+        return Boolean.TRUE.equals(changed);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.webshop.config;
+
+import org.hibernate.SessionEventListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Брои заявките към базата от Hibernate сесиите: единичните изпълнения (SELECT, INSERT без batch,
+ * nextval) и изпратените JDBC партиди – всяко е едно отиване до базата. Включва се само
+ * в профила benchmark (hibernate.session.events.auto), виж {@link OrderInsertBenchmark}.
+ */
+public class JdbcRoundTripCounter implements SessionEventListener {
+
+    private static final AtomicLong STATEMENTS = new AtomicLong();
+    private static final AtomicLong BATCHES = new AtomicLong();
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        STATEMENTS.incrementAndGet();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        BATCHES.incrementAndGet();
+    }
+
+    public static void reset() {
+        STATEMENTS.set(0);
+        BATCHES.set(0);
+    }
+
+    public static long statements() {
+        return STATEMENTS.get();
+    }
+
+    public static long batches() {
+        return BATCHES.get();
+    }
+}
@@ -1,6 +1,11 @@
 package com.example.webshop.config;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
@@ -9,13 +14,42 @@ import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class JwtUtil {
 
+    /** Проверени токени (по SHA-256 на токена) → claims, до изтичането им. */
+    private static final int MAX_VERIFIED = 10_000;
+
     private final SecretKey signingKey;
     private final long expirationMs;
+    /** Immutable и thread-safe – създава се веднъж, а не при всеки parse. */
+    private final JwtParser parser;
+    /** Запис изтича заедно с токена; при пълен кеш се изхвърлят най-малко използваните. */
+    private final Cache<String, Verified> verified = Caffeine.newBuilder()
+            .maximumSize(MAX_VERIFIED)
+            .expireAfter(new Expiry<String, Verified>() {
+                @Override
+                public long expireAfterCreate(String digest, Verified entry, long currentTime) {
+                    return entry.remainingNanos();
+                }
+
+                @Override
+                public long expireAfterUpdate(String digest, Verified entry, long currentTime, long currentDuration) {
+                    return entry.remainingNanos();
+                }
+
+                @Override
+                public long expireAfterRead(String digest, Verified entry, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .build();
 
     public JwtUtil(
             @Value("${jwt.secret}") String secret,
@@ -25,6 +59,7 @@ public class JwtUtil {
         }
         this.signingKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
         this.expirationMs = expirationMs;
+        this.parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
     }
 
     public String generateToken(String email) {
@@ -43,22 +78,47 @@ public class JwtUtil {
 
     public boolean validateToken(String token, String email) {
         try {
+            // Срокът и подписът се проверяват в parseClaims
             String subject = extractUsername(token);
-            return subject != null && subject.equals(email) && !isTokenExpired(token);
-        } catch (Exception e) {
+            return subject != null && subject.equals(email);
+        } catch (JwtException | IllegalArgumentException e) {
             return false;
         }
     }
 
-    private boolean isTokenExpired(String token) {
-        return parseClaims(token).getExpiration().before(new Date());
+    /**
+     * Проверява подписа и срока; JwtException при невалиден или изтекъл токен.
+     * Вече проверен токен се връща от кеша до изтичането си, без нов HMAC и JSON parse.
+     * Върнатите claims са общи – само за четене.
+     */
+    public Claims parseClaims(String token) {
+        String digest = digest(token);
+        // изтекъл запис вече го няма – parser-ът по-долу хвърля ExpiredJwtException
+        Verified cached = verified.getIfPresent(digest);
+        if (cached != null) {
+            return cached.claims;
+        }
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        Date expiration = claims.getExpiration();
+        if (expiration != null) {
+            verified.put(digest, new Verified(claims, expiration.getTime()));
+        }
+        return claims;
     }
 
-    private Claims parseClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(signingKey)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+    private static String digest(String token) {
+        try {
+            return HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Verified(Claims claims, long expiresAt) {
+
+        long remainingNanos() {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, expiresAt - System.currentTimeMillis()));
+        }
     }
 }
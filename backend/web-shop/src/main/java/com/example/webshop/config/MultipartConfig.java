@@ -13,8 +13,8 @@ import jakarta.servlet.MultipartConfigElement;
 public class MultipartConfig {
 
     /**
-     * Конфигурира multipart resolver да държи файловете в паметта вместо на диска.
-     * Това е необходимо за Render.com, където файловата система е ефемерна.
+     * Малките файлове остават в паметта, по-големите отиват във временен файл на контейнера
+     * и оттам се четат поточно (FileUploadController) – без целия файл в heap-а.
      */
     @Bean
     public MultipartConfigElement multipartConfigElement() {
@@ -26,10 +26,9 @@ public class MultipartConfig {
         // Максимален размер на цялата заявка: 20MB
         factory.setMaxRequestSize(DataSize.ofMegabytes(20));
         
-        // КРИТИЧНО: Задаваме file-size-threshold на 0, което означава че всички файлове
-        // ще се държат в паметта вместо да се записват на диска
-        // Това решава проблема с липсващите директории на Render.com
-        factory.setFileSizeThreshold(DataSize.ofBytes(0));
+        // До 64KB в паметта (без временен файл за миниатюри); над прага – временен файл,
+        // така че паметта на заявка не расте с размера на снимката
+        factory.setFileSizeThreshold(DataSize.ofKilobytes(64));
         
         // Задаваме location на null, за да не се опитва да създава директория
         factory.setLocation(null);
@@ -0,0 +1,89 @@
+package com.example.webshop.config;
+
+import com.example.webshop.dto.CreateOrderRequest;
+import com.example.webshop.services.OrderService;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Заявки към базата за една поръчка ({@link OrderService#createOrder}) с N реда.
+ * Стартира се с {@code --spring.profiles.active=benchmark}; всяка поръчка се записва (flush)
+ * и после се прави rollback, така че данните не се променят.
+ *
+ * <p>Без COMMIT: с IDENTITY и batch_size=0 – 1 + N INSERT-а (2 / 11 / 51 за 1 / 10 / 50 реда);
+ * с pooled sequences (allocationSize 50) и batch_size=50 – 2 партиди (orders и order_item)
+ * плюс един nextval на 50 нови id-та (2.1 / 2.2 / 3.05 средно, H2).
+ */
+@Component
+@Profile("benchmark")
+public class OrderInsertBenchmark implements CommandLineRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderInsertBenchmark.class);
+
+    private static final int[] LINES = {1, 10, 50};
+    private static final int ORDERS_PER_SIZE = 20;
+
+    private final OrderService orderService;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+
+    public OrderInsertBenchmark(OrderService orderService, EntityManager entityManager,
+                                TransactionTemplate transactionTemplate) {
+        this.orderService = orderService;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    public void run(String... args) {
+        for (int lines : LINES) {
+            long statements = 0;
+            long batches = 0;
+            long nanos = 0;
+            for (int i = 0; i < ORDERS_PER_SIZE; i++) {
+                CreateOrderRequest request = request(lines);
+                long[] counted = transactionTemplate.execute(status -> {
+                    JdbcRoundTripCounter.reset();
+                    long started = System.nanoTime();
+                    orderService.createOrder(request);
+                    entityManager.flush();
+                    long elapsed = System.nanoTime() - started;
+                    status.setRollbackOnly();
+                    return new long[]{JdbcRoundTripCounter.statements(), JdbcRoundTripCounter.batches(), elapsed};
+                });
+                statements += counted[0];
+                batches += counted[1];
+                nanos += counted[2];
+            }
+            log.info("Order with {} line(s): {} round trip(s) per order ({} statement(s), {} batch(es)), {} ms",
+                    lines, String.format("%.2f", (double) (statements + batches) / ORDERS_PER_SIZE),
+                    String.format("%.2f", (double) statements / ORDERS_PER_SIZE),
+                    String.format("%.2f", (double) batches / ORDERS_PER_SIZE),
+                    String.format("%.2f", nanos / 1e6 / ORDERS_PER_SIZE));
+        }
+    }
+
+    private static CreateOrderRequest request(int lines) {
+        List<CreateOrderRequest.ItemRequest> items = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            CreateOrderRequest.ItemRequest item = new CreateOrderRequest.ItemRequest();
+            item.setProductName("Benchmark " + i);
+            item.setPrice(BigDecimal.valueOf(10 + i));
+            item.setQuantity(1);
+            items.add(item);
+        }
+        CreateOrderRequest request = new CreateOrderRequest();
+        request.setCustomerEmail("benchmark@example.com");
+        request.setItems(items);
+        return request;
+    }
+}
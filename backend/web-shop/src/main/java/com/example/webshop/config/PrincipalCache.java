@@ -0,0 +1,92 @@
+package com.example.webshop.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.function.Supplier;
+
+/**
+ * Principal-ите от JWT филтъра по (subject, iat) – подписаният токен е достатъчен, а {@code users}
+ * се чете само при miss. Запис живее до TTL-а, но не и след изтичането на токена; при пълен кеш
+ * Caffeine изхвърля най-малко използваните, а изтеклите записи се чистят сами.
+ * При промяна или изтриване на потребителя записите му се махат ({@link UserCacheListener}).
+ */
+@Component
+public class PrincipalCache {
+
+    private static final int MAX_ENTRIES = 10_000;
+
+    private final long ttlNanos;
+    private final Cache<Key, Entry> principals = Caffeine.newBuilder()
+            .maximumSize(MAX_ENTRIES)
+            .expireAfter(new Expiry<Key, Entry>() {
+                @Override
+                public long expireAfterCreate(Key key, Entry entry, long currentTime) {
+                    return entry.ttlNanos;
+                }
+
+                @Override
+                public long expireAfterUpdate(Key key, Entry entry, long currentTime, long currentDuration) {
+                    return entry.ttlNanos;
+                }
+
+                @Override
+                public long expireAfterRead(Key key, Entry entry, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .build();
+
+    public PrincipalCache(@Value("${app.auth.principal-cache.ttl:5m}") Duration ttl) {
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    public UserDetails get(String subject, Date issuedAt, Date expiresAt, Supplier<UserDetails> loader) {
+        Key key = new Key(subject, issuedAt != null ? issuedAt.getTime() : 0);
+        Entry entry = principals.getIfPresent(key);
+        if (entry != null) {
+            return entry.principal;
+        }
+        UserDetails principal = loader.get();
+        long ttl = ttlNanos;
+        if (expiresAt != null) {
+            ttl = Math.min(ttl, Duration.ofMillis(expiresAt.getTime() - System.currentTimeMillis()).toNanos());
+        }
+        if (ttl > 0) {
+            principals.put(key, new Entry(principal, ttl));
+        }
+        return principal;
+    }
+
+    /** Веднага и още веднъж след commit – заявка междувременно може да е прочела старите данни. */
+    public void evict(String subject) {
+        evictNow(subject);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictNow(subject);
+                }
+            });
+        }
+    }
+
+    private void evictNow(String subject) {
+        principals.asMap().keySet().removeIf(key -> key.subject.equals(subject));
+    }
+
+    private record Key(String subject, long issuedAt) {
+    }
+
+    /** {@code ttlNanos} – min(TTL, оставащото време на токена), изчислено при зареждане. */
+    private record Entry(UserDetails principal, long ttlNanos) {
+    }
+}
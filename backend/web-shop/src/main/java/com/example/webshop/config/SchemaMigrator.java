@@ -52,7 +52,14 @@ public class SchemaMigrator implements ApplicationRunner {
                 "ALTER TABLE item ADD COLUMN IF NOT EXISTS payment_method VARCHAR(255)",
                 // Backfill any rows that pre-existed before we added these columns
                 "UPDATE item SET sold = FALSE WHERE sold IS NULL",
-                "UPDATE item SET is_vip = FALSE WHERE is_vip IS NULL"
+                "UPDATE item SET is_vip = FALSE WHERE is_vip IS NULL",
+                // Keyset пагинация на /items/list (VIP първи, после по id)
+                "CREATE INDEX IF NOT EXISTS idx_item_vip_id ON item (is_vip, id)",
+                // BlobStore "db": байтовете на снимките извън item_image; старите редове пазят data
+                "CREATE TABLE IF NOT EXISTS blob_data (blob_key VARCHAR(255) PRIMARY KEY, content_type VARCHAR(64), "
+                        + "size_bytes BIGINT NOT NULL, data BYTEA NOT NULL, created_at TIMESTAMP)",
+                "ALTER TABLE item_image ALTER COLUMN data DROP NOT NULL",
+                "ALTER TABLE item_image_variant ALTER COLUMN data DROP NOT NULL"
         );
 
         for (String sql : statements) {
@@ -8,12 +8,26 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
+import org.springframework.security.web.util.matcher.NegatedRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.web.cors.CorsConfigurationSource;
 
+import static org.springframework.security.web.util.matcher.AntPathRequestMatcher.antMatcher;
+
 @Configuration
 @EnableWebSecurity
 public class SecurityConfig {
 
+    /**
+     * Публичните GET-и – каталог, детайли на обяви (без /items/messages/**) и снимки по SHA-256.
+     * Не зависят от потребителя, затова {@link JwtAuthenticationFilter} изобщо не чете токена за тях.
+     */
+    static final RequestMatcher PUBLIC_GET = new AndRequestMatcher(
+            new OrRequestMatcher(antMatcher(HttpMethod.GET, "/items/**"), antMatcher(HttpMethod.GET, "/images/**")),
+            new NegatedRequestMatcher(antMatcher(HttpMethod.GET, "/items/messages/**")));
+
     private final CorsConfigurationSource corsConfigurationSource;
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
 
@@ -35,12 +49,14 @@ public class SecurityConfig {
                         .requestMatchers("/ws/**", "/ws").permitAll()
                         .requestMatchers(HttpMethod.POST, "/auth/register", "/auth/login").permitAll()
                         .requestMatchers(HttpMethod.GET, "/auth/health").permitAll()
+                        // Метриките (кешове, BCrypt, Hibernate) не са публични; health остава отворен
+                        .requestMatchers("/actuator/metrics/**").authenticated()
                         .requestMatchers("/actuator/**").permitAll()
                         .requestMatchers("/health", "/health/**").permitAll()
                         // Съобщения по обяви – само с валиден JWT
                         .requestMatchers(HttpMethod.GET, "/items/messages/**").authenticated()
-                        // Публичен каталог и детайли на обяви (GET)
-                        .requestMatchers(HttpMethod.GET, "/items/**").permitAll()
+                        // Публичен каталог, детайли на обяви и снимки по съдържание (GET)
+                        .requestMatchers(PUBLIC_GET).permitAll()
                         // Създаване/редакция/изтриване на обяви, въпроси, отговори, ревюта
                         .requestMatchers(HttpMethod.POST, "/items", "/items/**").authenticated()
                         .requestMatchers(HttpMethod.PUT, "/items/**").authenticated()
@@ -52,6 +68,7 @@ public class SecurityConfig {
                         .requestMatchers("/vip-payment/**").authenticated()
                         .requestMatchers("/cart/**").authenticated()
                         .requestMatchers("/orders/**").authenticated()
+                        .requestMatchers("/export/**").authenticated()
                         .requestMatchers("/auth/me").authenticated()
                         .anyRequest().permitAll())
                 .headers(headers -> headers.frameOptions(frame -> frame.disable()))
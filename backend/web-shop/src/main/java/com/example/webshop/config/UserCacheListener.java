@@ -0,0 +1,24 @@
+package com.example.webshop.config;
+
+import com.example.webshop.models.User;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * JPA callback-и на {@link User}: смяна на парола (или друго поле) и изтриване махат
+ * кешираните principal-и. Hibernate създава listener-а през Spring, затова има инжекции.
+ */
+public class UserCacheListener {
+
+    private final PrincipalCache principalCache;
+
+    public UserCacheListener(PrincipalCache principalCache) {
+        this.principalCache = principalCache;
+    }
+
+    @PostUpdate
+    @PostRemove
+    void onChange(User user) {
+        principalCache.evict(user.getEmail());
+    }
+}
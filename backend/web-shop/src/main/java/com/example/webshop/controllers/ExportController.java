@@ -0,0 +1,58 @@
+package com.example.webshop.controllers;
+
+import com.example.webshop.services.ExportService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.zip.GZIPOutputStream;
+
+@RestController
+@RequestMapping("/export")
+@CrossOrigin(origins = "*")
+public class ExportController {
+
+    private final ExportService exportService;
+
+    public ExportController(ExportService exportService) {
+        this.exportService = exportService;
+    }
+
+    /**
+     * Поточен експорт: /export/items, /export/orders, /export/item-orders или /export/messages.
+     * {@code format} – ndjson (по подразбиране) или csv; {@code gzip=true} връща .gz файл.
+     */
+    @GetMapping("/{dataset}")
+    public void export(@PathVariable String dataset,
+                       @RequestParam(defaultValue = "ndjson") String format,
+                       @RequestParam(defaultValue = "false") boolean gzip,
+                       Authentication auth,
+                       HttpServletResponse response) throws IOException {
+        exportService.requireAllowed(auth != null ? auth.getName() : null);
+        ExportService.Dataset source = ExportService.Dataset.fromPath(dataset);
+        ExportService.Format target = ExportService.Format.parse(format);
+
+        exportService.export(source, target, () -> open(response, source, target, gzip));
+    }
+
+    private static OutputStream open(HttpServletResponse response, ExportService.Dataset source,
+                                     ExportService.Format target, boolean gzip) throws IOException {
+        String filename = source.path() + "-" + LocalDate.now() + "." + target.extension() + (gzip ? ".gz" : "");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename(filename).build().toString());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+        if (gzip) {
+            response.setContentType("application/gzip");
+        } else {
+            response.setContentType(target.contentType());
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        }
+        return gzip ? new GZIPOutputStream(response.getOutputStream(), 8192) : response.getOutputStream();
+    }
+}
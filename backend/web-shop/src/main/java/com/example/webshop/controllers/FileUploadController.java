@@ -1,12 +1,16 @@
 package com.example.webshop.controllers;
 
+import com.example.webshop.config.FileResponses;
 import com.example.webshop.config.UploadStorage;
 import com.example.webshop.exception.ApiException;
 import com.example.webshop.models.Item;
 import com.example.webshop.validation.EmailValidation;
 import com.example.webshop.repositories.ItemRepository;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
+import com.example.webshop.services.ItemChangedEvent;
+import com.example.webshop.services.ItemImageService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -18,7 +22,7 @@ import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Base64;
+import java.util.List;
 import java.util.regex.Pattern;
 
 @RestController
@@ -27,9 +31,14 @@ import java.util.regex.Pattern;
 public class FileUploadController {
 
     private final ItemRepository itemRepository;
+    private final ItemImageService itemImageService;
+    private final ApplicationEventPublisher events;
 
-    public FileUploadController(ItemRepository itemRepository) {
+    public FileUploadController(ItemRepository itemRepository, ItemImageService itemImageService,
+                                ApplicationEventPublisher events) {
         this.itemRepository = itemRepository;
+        this.itemImageService = itemImageService;
+        this.events = events;
     }
 
     @PostMapping(value = "/{itemId}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
@@ -73,16 +82,8 @@ public class FileUploadController {
                         .body("{\"error\":\"You can only upload images to your own listings\",\"status\":\"error\"}");
             }
 
-            byte[] bytes;
-            try {
-                bytes = file.getBytes();
-            } catch (IOException e) {
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .body("{\"error\":\"Failed to read file: " + escapeJson(e.getMessage()) + "\",\"status\":\"error\"}");
-            }
-
-            if (bytes.length > 3 * 1024 * 1024) {
+            // Лимитът по декларирания размер – преди да е прочетен и един байт
+            if (file.getSize() > ItemImageService.MAX_IMAGE_BYTES) {
                 return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
                         .contentType(MediaType.APPLICATION_JSON)
                         .body("{\"error\":\"Image is too large. Maximum size is 3MB. Please compress or resize your image.\",\"status\":\"error\"}");
@@ -95,17 +96,9 @@ public class FileUploadController {
                         .body("{\"error\":\"File must be an image\",\"status\":\"error\"}");
             }
 
-            // Render free tier has no persistent disk – store images as base64
-            // inside the existing TEXT `image_url` column so they survive restarts.
-            // Frontend already compresses uploads to ~300KB, so a 5-image listing
-            // stays well below the row size limit.
-            String normalizedContentType = normalizeImageMime(contentType);
-            String base64 = Base64.getEncoder().encodeToString(bytes);
-            String token = "data:" + normalizedContentType + ";base64," + base64;
-
-            String newImageUrl;
-            if (append && item.getImageUrl() != null && !item.getImageUrl().trim().isEmpty()) {
-                newImageUrl = item.getImageUrl().trim() + UploadStorage.IMAGE_PART_DELIMITER + token;
+            if (append) {
+                // Стари data: токени първо в item_image, за да се запази редът в галерията
+                itemImageService.drainInlineImages(item);
             } else {
                 // Replacing the previous picture(s) – clean up any legacy fs:
                 // tokens that may still be lingering on disk from older deploys.
@@ -117,62 +110,47 @@ public class FileUploadController {
                         }
                     }
                 }
-                newImageUrl = token;
+                item.setImageUrl(null);
+                itemImageService.deleteForItem(itemId);
             }
 
-            item.setImageUrl(newImageUrl);
-            itemRepository.saveAndFlush(item);
+            // Проверка и SHA-256 с едно четене на part-а, после съдържанието се качва само ако е ново
+            itemImageService.insertAll(itemId, itemImageService.prepareAll(
+                    List.of(new ItemImageService.Upload(file, file.getSize(), contentType))));
+
+            itemRepository.save(item);
+            // Снимката е част от детайла на обявата – вдига версията (ETag) след commit
+            events.publishEvent(ItemChangedEvent.saved(item));
 
             return ResponseEntity.ok()
                     .contentType(MediaType.APPLICATION_JSON)
                     .body("{\"status\":\"success\",\"message\":\"Image uploaded successfully\",\"imageAvailable\":true,\"itemId\":" + itemId + "}");
     }
 
-    private static String normalizeImageMime(String contentType) {
-        String ct = contentType.toLowerCase();
-        if (ct.contains("png")) return "image/png";
-        if (ct.contains("gif")) return "image/gif";
-        if (ct.contains("webp")) return "image/webp";
-        return "image/jpeg";
-    }
-
-    private static String escapeJson(String s) {
-        if (s == null) return "";
-        return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", " ").replace("\r", " ");
-    }
-
     @GetMapping("/uploads/{fileName:.+}")
-    public ResponseEntity<Resource> getImage(@PathVariable String fileName) {
-        try {
-            if (!UploadStorage.isSafeStoredFileName(fileName)) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-            }
-            Path root = UploadStorage.getUploadRoot();
-            Path filePath = root.resolve(fileName).normalize();
-            if (!filePath.startsWith(root)) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-            }
-            Resource resource = new FileSystemResource(filePath.toFile());
-
-            if (!resource.exists() || !resource.isReadable()) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-            }
+    public void getImage(@PathVariable String fileName, HttpServletRequest request,
+                         HttpServletResponse response) throws IOException {
+        if (!UploadStorage.isSafeStoredFileName(fileName)) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        Path root = UploadStorage.getUploadRoot();
+        Path filePath = root.resolve(fileName).normalize();
+        if (!filePath.startsWith(root) || !Files.isRegularFile(filePath) || !Files.isReadable(filePath)) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
 
-            String contentType = "application/octet-stream";
-            try {
-                String probed = Files.probeContentType(filePath);
-                if (probed != null) {
-                    contentType = probed;
-                }
-            } catch (IOException ignored) {
+        String contentType = "application/octet-stream";
+        try {
+            String probed = Files.probeContentType(filePath);
+            if (probed != null) {
+                contentType = probed;
             }
-
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + fileName + "\"")
-                    .body(resource);
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        } catch (IOException ignored) {
         }
+
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + fileName + "\"");
+        FileResponses.serve(filePath, contentType, null, request, response);
     }
 }
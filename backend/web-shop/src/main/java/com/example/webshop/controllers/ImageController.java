@@ -0,0 +1,50 @@
+package com.example.webshop.controllers;
+
+import com.example.webshop.services.ImageBlobService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Снимки по SHA-256 на съдържанието: URL-ът никога не сменя байтовете си, затова се кешира
+ * за година като {@code immutable}, а ETag-ът е самият хеш (304 без четене от хранилището).
+ */
+@RestController
+@RequestMapping("/images")
+@CrossOrigin(origins = "*")
+public class ImageController {
+
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable();
+
+    private final ImageBlobService imageBlobService;
+
+    public ImageController(ImageBlobService imageBlobService) {
+        this.imageBlobService = imageBlobService;
+    }
+
+    @GetMapping("/{hash:[0-9a-f]{64}}")
+    public ResponseEntity<byte[]> getImage(@PathVariable String hash,
+                                           @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String etag = "\"" + hash + "\"";
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(IMMUTABLE).build();
+        }
+        Optional<ImageBlobService.BlobRef> ref = imageBlobService.find(hash);
+        if (ref.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return imageBlobService.readBytes(ref.get())
+                .map(bytes -> ResponseEntity.ok()
+                        .contentType(MediaType.parseMediaType(ref.get().mimeType()))
+                        .eTag(etag)
+                        .cacheControl(IMMUTABLE)
+                        .body(bytes))
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
@@ -1,26 +1,54 @@
 package com.example.webshop.controllers;
 
+import com.example.webshop.config.FileResponses;
 import com.example.webshop.config.JsonViews;
 import com.example.webshop.config.UploadStorage;
+import com.example.webshop.dto.ImageManifestDto;
+import com.example.webshop.dto.ItemFilter;
 import com.example.webshop.dto.ItemListDto;
 import com.example.webshop.exception.ApiException;
 import com.example.webshop.models.Item;
+import com.example.webshop.models.ItemImage;
+import com.example.webshop.models.ItemImageVariant;
+import com.example.webshop.services.CatalogVersions;
+import com.example.webshop.services.ImageBytesCache;
+import com.example.webshop.services.ImageVariantService;
+import com.example.webshop.services.ItemImageService;
+import com.example.webshop.services.ItemImportService;
 import com.example.webshop.services.ItemService;
+import com.example.webshop.validation.ItemValidation;
 import com.fasterxml.jackson.annotation.JsonView;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
 
 import java.math.BigDecimal;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Base64;
 import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/items")
@@ -28,51 +56,35 @@ import java.util.List;
 public class ItemController {
 
     private static final Logger logger = LoggerFactory.getLogger(ItemController.class);
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+
     private final ItemService itemService;
+    private final CatalogVersions catalogVersions;
+    private final ObjectMapper objectMapper;
+    private final ItemImageService itemImageService;
+    private final ImageVariantService imageVariantService;
+    private final ImageBytesCache imageBytesCache;
+    private final ItemImportService itemImportService;
 
-    public ItemController(ItemService itemService) {
+    public ItemController(ItemService itemService, CatalogVersions catalogVersions, ObjectMapper objectMapper,
+                          ItemImageService itemImageService, ImageVariantService imageVariantService,
+                          ImageBytesCache imageBytesCache, ItemImportService itemImportService) {
         this.itemService = itemService;
+        this.catalogVersions = catalogVersions;
+        this.objectMapper = objectMapper;
+        this.itemImageService = itemImageService;
+        this.imageVariantService = imageVariantService;
+        this.imageBytesCache = imageBytesCache;
+        this.itemImportService = itemImportService;
     }
 
     @PostMapping
     @JsonView(JsonViews.WithImage.class)
     public Item create(@RequestBody Item item) {
-        if (item == null) {
-            logger.error("Create item attempt with null item object");
-            throw new ApiException(HttpStatus.BAD_REQUEST, "Item data is required");
-        }
-
-        logger.info("Received item creation request: title='{}', description='{}', price={}, ownerEmail='{}', category='{}', paymentMethod='{}'",
-                item.getTitle(), 
-                item.getDescription() != null ? item.getDescription().substring(0, Math.min(50, item.getDescription().length())) : "null",
-                item.getPrice(),
-                item.getOwnerEmail(),
-                item.getCategory(),
-                item.getPaymentMethod());
-
-        if (item.getTitle() == null || item.getTitle().trim().isEmpty()) {
-            logger.error("Create item attempt with empty title");
-            throw new ApiException(HttpStatus.BAD_REQUEST, "Title is required");
-        }
-
-        if (item.getDescription() == null || item.getDescription().trim().isEmpty()) {
-            logger.error("Create item attempt with empty description");
-            throw new ApiException(HttpStatus.BAD_REQUEST, "Description is required");
-        }
-        if (item.getDescription().trim().length() < 40) {
-            logger.error("Create item attempt with description too short: {} chars", item.getDescription().length());
-            throw new ApiException(HttpStatus.BAD_REQUEST, "Description must be at least 40 characters");
-        }
-
-        if (item.getPrice() == null || item.getPrice().compareTo(BigDecimal.ZERO) <= 0) {
-            logger.error("Create item attempt with invalid price: {}", item.getPrice());
-            throw new ApiException(HttpStatus.BAD_REQUEST, "Price must be greater than 0");
-        }
+        ItemValidation.requireValidNew(item);
 
-        if (item.getOwnerEmail() == null || item.getOwnerEmail().trim().isEmpty()) {
-            logger.error("Create item attempt without ownerEmail");
-            throw new ApiException(HttpStatus.BAD_REQUEST, "Owner email is required");
-        }
+        logger.info("Received item creation request: title='{}', price={}, ownerEmail='{}', category='{}', paymentMethod='{}'",
+                item.getTitle(), item.getPrice(), item.getOwnerEmail(), item.getCategory(), item.getPaymentMethod());
 
         try {
             logger.info("Creating item: title={}, ownerEmail={}, category={}",
@@ -88,6 +100,56 @@ public class ItemController {
         }
     }
 
+    /**
+     * Обява + N снимки в една multipart заявка и една транзакция: part "item" (JSON)
+     * и part-ове "files". Снимките се обработват паралелно преди записа; при грешка
+     * в която и да е от тях не се създава нищо.
+     */
+    @PostMapping(value = "/with-images", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @JsonView(JsonViews.WithImage.class)
+    public Item createWithImages(@RequestPart("item") Item item,
+                                 @RequestPart(value = "files", required = false) List<MultipartFile> files) {
+        ItemValidation.requireValidNew(item);
+        List<MultipartFile> parts = files == null ? List.of() : files.stream().filter(f -> !f.isEmpty()).toList();
+        if (parts.size() > ItemImageService.MAX_IMAGES_PER_REQUEST) {
+            throw new ApiException(HttpStatus.BAD_REQUEST,
+                    "At most " + ItemImageService.MAX_IMAGES_PER_REQUEST + " images per listing");
+        }
+        List<ItemImageService.PreparedImage> images = itemImageService.prepareAll(parts.stream()
+                .map(f -> new ItemImageService.Upload(f, f.getSize(), f.getContentType()))
+                .toList());
+        Item created = itemService.createWithImages(item, images);
+        logger.info("Item {} created with {} image(s)", created.getId(), images.size());
+        return created;
+    }
+
+    /**
+     * Масов импорт: тялото е CSV (text/csv, първият ред – имената на полетата) или NDJSON
+     * (application/x-ndjson) и се чете поточно. Отговорът също е NDJSON – грешка за всеки невалиден
+     * ред и прогрес след всяка партида; последният ред е с "done": true.
+     */
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson"})
+    public void importItems(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ItemImportService.Format format = MediaType.parseMediaType(request.getContentType())
+                .isCompatibleWith(TEXT_CSV) ? ItemImportService.Format.CSV : ItemImportService.Format.NDJSON;
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        OutputStream out = response.getOutputStream();
+        ItemImportService.Progress result = itemImportService.importItems(request.getInputStream(), format, event -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(event));
+                out.write('\n');
+                if (event instanceof ItemImportService.Progress) {
+                    out.flush(); // прогресът стига до клиента след всяка партида
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        logger.info("Item import ({}): {} row(s), {} imported, {} failed",
+                format, result.processed(), result.imported(), result.failed());
+    }
+
     /** Health check – използвай /items/health-check (не /ping – конфликт с /{id}) */
     @GetMapping({ "/ping", "/health-check" })
     public ResponseEntity<String> ping() {
@@ -100,22 +162,86 @@ public class ItemController {
         return ResponseEntity.ok(java.util.Map.of("build", "v7-may2026-jpa-cleanup"));
     }
 
+    /**
+     * Целият каталог със снимките. Пише се поточно – всяка обява се сериализира
+     * с JsonGenerator веднага след прочитането ѝ, вместо да се събира List в паметта.
+     */
     @GetMapping
-    @JsonView(JsonViews.WithImage.class)
-    public List<Item> getAll() {
-        return itemService.getAll();
+    public void getAll(HttpServletRequest request, HttpServletResponse response, WebRequest webRequest)
+            throws IOException {
+        String etag = catalogVersions.catalogETag("full?" + request.getQueryString());
+        if (webRequest.checkNotModified(etag)) {
+            return;
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+
+        ObjectWriter writer = objectMapper.writerWithView(JsonViews.WithImage.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartArray();
+            itemService.streamAll(item -> {
+                try {
+                    writer.writeValue(generator, item);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+        } catch (UncheckedIOException e) {
+            // Отговорът вече е започнал – само логваме (клиентът е прекъснал или е грешка при запис)
+            logger.warn("Streaming /items aborted: {}", e.getCause().getMessage());
+        }
     }
 
-    /** Списък БЕЗ imageUrl – за list view (избягва 500 на Render от големи base64) */
+    /**
+     * Списък БЕЗ imageUrl – за list view (избягва 500 на Render от големи base64).
+     * С ?after=&limit= или филтри (category, minPrice, maxPrice, sold, vip) връща keyset
+     * страница ({@code items} + {@code nextCursor}); ?facets=true добавя броячите за филтрите.
+     * Без параметри – целия списък, както досега (стари клиенти).
+     */
     @GetMapping("/list")
-    public List<ItemListDto> getList() {
-        return itemService.getAllForList();
+    public ResponseEntity<?> getList(
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(required = false) Boolean sold,
+            @RequestParam(required = false) Boolean vip,
+            @RequestParam(required = false, defaultValue = "false") boolean facets,
+            HttpServletRequest request,
+            WebRequest webRequest) {
+        // Версията се чете преди данните – при конкурентен запис ETag-ът може да е само по-стар, не по-нов
+        String etag = catalogVersions.catalogETag("list?" + request.getQueryString());
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        ItemFilter filter = new ItemFilter(category, minPrice, maxPrice, sold, vip);
+        Object body = after == null && limit == null && filter.isEmpty() && !facets
+                ? itemService.getAllForList()
+                : itemService.getPage(after, limit, filter, facets);
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(body);
+    }
+
+    /** Търсене: /items/search?q=телефон (работи и с латиница – "telefon") */
+    @GetMapping("/search")
+    public List<ItemListDto> search(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) Integer limit) {
+        return itemService.search(q, limit);
     }
 
     /** Детайли БЕЗ imageUrl – избягва timeout/500 от големи base64. Снимката се взима от /items/{id}/image */
     @GetMapping("/{id:[0-9]+}")
-    public Item getById(@PathVariable Long id) {
-        return itemService.getById(id);
+    public ResponseEntity<Item> getById(@PathVariable Long id, WebRequest webRequest) {
+        String etag = catalogVersions.itemETag(id);
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(itemService.getById(id));
     }
 
     /** JSON с imageUrl – за URL снимки (seed). За base64 използвай /image/raw */
@@ -128,31 +254,80 @@ public class ItemController {
         return ResponseEntity.ok(java.util.Map.of("imageUrl", item.getImageUrl()));
     }
 
-    /** Брой снимки – за галерия без зареждане на целия imageUrl */
+    /** Брой снимки – от галерията (метаданни), без да се зарежда обявата или байтовете */
     @GetMapping("/{id:[0-9]+}/image/count")
     public ResponseEntity<java.util.Map<String, Integer>> getImageCount(@PathVariable Long id) {
-        Item item = itemService.getById(id);
-        if (item.getImageUrl() == null || item.getImageUrl().isEmpty()) {
-            return ResponseEntity.ok(java.util.Map.of("count", 0));
-        }
-        String[] parts = item.getImageUrl().split(java.util.regex.Pattern.quote(UploadStorage.IMAGE_PART_DELIMITER));
-        int count = 0;
-        for (String p : parts) {
-            if (p != null && !p.trim().isEmpty()) count++;
-        }
-        return ResponseEntity.ok(java.util.Map.of("count", Math.max(1, count)));
+        return ResponseEntity.ok(java.util.Map.of("count", itemImageService.manifest(id).count()));
     }
 
-    /** Raw bytes – base64 (legacy), fs: файлове на диска, или външен http URL. ?index=0,1,2 за множество снимки */
+    /** Галерия: за всяка снимка mime, размер в байтове и пиксели, SHA-256 и URL – без байтовете */
+    @GetMapping("/{id:[0-9]+}/images")
+    public ResponseEntity<ImageManifestDto> getImageManifest(@PathVariable Long id) {
+        return ResponseEntity.ok(itemImageService.manifest(id));
+    }
+
+    /**
+     * Raw bytes – ред от item_image (един ред по (item_id, ordinal)), после legacy токените
+     * в imageUrl: base64, fs: файлове на диска, или външен http URL. ?index=0,1,2 за множество снимки,
+     * ?size=160/480/1080 за умален вариант (докато не е готов – оригиналът).
+     * С {@code Accept: image/webp} пълният размер се връща като WebP копие, ако има такова (Vary: Accept)
+     */
     @GetMapping("/{id:[0-9]+}/image/raw")
     public ResponseEntity<byte[]> getImageRaw(
             @PathVariable Long id,
-            @RequestParam(required = false, defaultValue = "0") int index) {
+            @RequestParam(required = false, defaultValue = "0") int index,
+            @RequestParam(required = false) Integer size,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        int requestedIndex = Math.max(index, 0);
+        int width = size != null && size > 0 ? ImageVariantService.standardWidth(size) : -1;
+        String format = width <= 0 && acceptsWebp(request) ? "image/webp" : "";
+        ImageBytesCache.Key key = imageBytesCache.key(id, requestedIndex, Math.max(width, 0), format);
+        ImageBytesCache.Entry cached = imageBytesCache.get(key);
+        if (cached != null) {
+            writeCached(cached, response);
+            return null;
+        }
+        Optional<ItemImage> stored = itemImageService.findStored(id, requestedIndex);
+        if (stored.isPresent()) {
+            ItemImage image = stored.get();
+            if (width > 0) {
+                Optional<ItemImageVariant> variant = imageVariantService.find(image, width);
+                if (variant.isPresent() && serveFile(imageVariantService.file(variant.get()),
+                        variant.get().getMimeType(), request, response)) {
+                    return null;
+                }
+                Optional<byte[]> variantBytes = variant.flatMap(imageVariantService::readBytes);
+                if (variantBytes.isPresent()) {
+                    return cachedResponse(key, variant.get().getMimeType(), variantBytes.get());
+                }
+                if (!imageVariantService.isProcessed(image)) {
+                    // Вариантът още се генерира – оригиналът не се кешира под ключа на размера
+                    return originalResponse(null, image, request, response);
+                }
+            } else if (!format.isEmpty()) {
+                Optional<ItemImageVariant> copy = imageVariantService.findFullSize(image, format);
+                if (copy.isPresent() && serveFile(imageVariantService.file(copy.get()), format, request, response)) {
+                    return null;
+                }
+                Optional<byte[]> copyBytes = copy.flatMap(imageVariantService::readBytes);
+                if (copyBytes.isPresent()) {
+                    return cachedResponse(key, format, copyBytes.get());
+                }
+            }
+            return originalResponse(key, image, request, response);
+        }
+        int storedCount = (int) itemImageService.countStored(id);
         Item item = itemService.getById(id);
         String raw = item.getImageUrl();
         if (raw == null || raw.isEmpty()) {
-            return ResponseEntity.notFound().build();
+            // Индекс извън галерията – както преди, връщаме първата снимка
+            Optional<ItemImage> first = storedCount > 0 ? itemImageService.findStored(id, 0) : Optional.empty();
+            return first.isPresent()
+                    ? originalResponse(key, first.get(), request, response)
+                    : ResponseEntity.notFound().build();
         }
+        index -= storedCount;
         String[] parts = raw.split(java.util.regex.Pattern.quote(UploadStorage.IMAGE_PART_DELIMITER));
         String url = (index >= 0 && index < parts.length) ? parts[index].trim() : parts[0].trim();
         if (url.isEmpty()) return ResponseEntity.notFound().build();
@@ -167,17 +342,13 @@ public class ItemController {
                 if (!file.startsWith(base) || !Files.isRegularFile(file)) {
                     return ResponseEntity.notFound().build();
                 }
-                byte[] bytes = Files.readAllBytes(file);
-                if (bytes.length == 0) {
-                    return ResponseEntity.notFound().build();
-                }
                 String mime = Files.probeContentType(file);
                 if (mime == null || mime.isEmpty()) {
                     mime = "image/jpeg";
                 }
-                HttpHeaders headers = new HttpHeaders();
-                headers.setCacheControl("public, max-age=3600");
-                return ResponseEntity.ok().contentType(MediaType.parseMediaType(mime)).headers(headers).body(bytes);
+                // Без byte[] – sendfile / поточно, с Range и If-Modified-Since
+                FileResponses.serve(file, mime, "public, max-age=3600", request, response);
+                return null;
             } catch (IOException e) {
                 logger.warn("Failed to read stored image for item {}: {}", id, e.getMessage());
                 return ResponseEntity.notFound().build();
@@ -187,16 +358,14 @@ public class ItemController {
             try {
                 int comma = url.indexOf(',');
                 if (comma < 0) return ResponseEntity.badRequest().build();
-                String base64 = url.substring(comma + 1).replaceAll("\\s", "");
-                byte[] bytes = Base64.getDecoder().decode(base64);
+                // MIME декодерът пропуска whitespace – без regex върху целия низ
+                byte[] bytes = Base64.getMimeDecoder().decode(url.substring(comma + 1));
                 if (bytes == null || bytes.length == 0) return ResponseEntity.notFound().build();
                 String mime = "image/jpeg";
                 if (url.startsWith("data:image/png")) mime = "image/png";
                 else if (url.startsWith("data:image/gif")) mime = "image/gif";
                 else if (url.startsWith("data:image/webp")) mime = "image/webp";
-                HttpHeaders headers = new HttpHeaders();
-                headers.setCacheControl("public, max-age=3600");
-                return ResponseEntity.ok().contentType(MediaType.parseMediaType(mime)).headers(headers).body(bytes);
+                return cachedResponse(key, mime, bytes);
             } catch (Exception e) {
                 logger.warn("Failed to decode base64 image for item {}: {}", id, e.getMessage());
                 return ResponseEntity.notFound().build();
@@ -208,6 +377,78 @@ public class ItemController {
         return ResponseEntity.notFound().build();
     }
 
+    /** Само изрично image/webp в Accept – {@code *}{@code /*} (curl, стари клиенти) получава оригинала. */
+    private static boolean acceptsWebp(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        if (accept == null || !accept.contains("image/webp")) {
+            return false;
+        }
+        try {
+            return MediaType.parseMediaTypes(accept).stream()
+                    .anyMatch(t -> "image".equals(t.getType()) && "webp".equals(t.getSubtype()) && t.getQualityValue() > 0);
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Оригиналът на снимката: от {@code fs} – поточно през {@link FileResponses}; иначе байтовете,
+     * кеширани под {@code key} (без кеширане при null).
+     */
+    private ResponseEntity<byte[]> originalResponse(ImageBytesCache.Key key, ItemImage image,
+                                                    HttpServletRequest request, HttpServletResponse response) {
+        if (serveFile(itemImageService.file(image), image.getMimeType(), request, response)) {
+            return null;
+        }
+        return itemImageService.readBytes(image)
+                .map(bytes -> key != null ? cachedResponse(key, image.getMimeType(), bytes) : imageResponse(image.getMimeType(), bytes))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /** Blob във {@code fs}: sendfile, Range и 304 – без byte[] и без кеша в паметта. */
+    private static boolean serveFile(Optional<Path> file, String mime,
+                                     HttpServletRequest request, HttpServletResponse response) {
+        if (file.isEmpty()) {
+            return false;
+        }
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        try {
+            FileResponses.serve(file.get(), mime, "public, max-age=3600", request, response);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    private ResponseEntity<byte[]> cachedResponse(ImageBytesCache.Key key, String mime, byte[] bytes) {
+        imageBytesCache.put(key, mime, bytes);
+        return imageResponse(mime, bytes);
+    }
+
+    /** Директно от off-heap буфера – без копие на цялата снимка в heap-а. */
+    private static void writeCached(ImageBytesCache.Entry entry, HttpServletResponse response) {
+        response.setContentType(entry.mimeType());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=3600");
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        response.setContentLength(entry.length());
+        try {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            ByteBuffer data = entry.data();
+            while (data.hasRemaining()) {
+                out.write(data);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ResponseEntity<byte[]> imageResponse(String mime, byte[] bytes) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl("public, max-age=3600");
+        headers.setVary(List.of(HttpHeaders.ACCEPT));
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(mime)).headers(headers).body(bytes);
+    }
+
     @PutMapping("/{id:[0-9]+}")
     public Item update(
             @PathVariable Long id,
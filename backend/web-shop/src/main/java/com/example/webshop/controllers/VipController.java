@@ -3,6 +3,7 @@ package com.example.webshop.controllers;
 import com.example.webshop.exception.ApiException;
 import com.example.webshop.models.Item;
 import com.example.webshop.repositories.ItemRepository;
+import com.example.webshop.services.ItemService;
 import com.example.webshop.services.VipPaymentService;
 import com.example.webshop.validation.EmailValidation;
 import org.springframework.http.HttpStatus;
@@ -17,10 +18,12 @@ import java.util.Map;
 public class VipController {
 
     private final ItemRepository itemRepository;
+    private final ItemService itemService;
     private final VipPaymentService vipPaymentService;
 
-    public VipController(ItemRepository itemRepository, VipPaymentService vipPaymentService) {
+    public VipController(ItemRepository itemRepository, ItemService itemService, VipPaymentService vipPaymentService) {
         this.itemRepository = itemRepository;
+        this.itemService = itemService;
         this.vipPaymentService = vipPaymentService;
     }
 
@@ -51,8 +54,7 @@ public class VipController {
                     "Payment is required to activate VIP. Please complete payment first.");
         }
 
-        item.setIsVip(true);
-        return itemRepository.saveAndFlush(item);
+        return itemService.setVip(item, true);
     }
 
     @PostMapping(value = "/deactivate", consumes = "application/json;charset=UTF-8", produces = "application/json;charset=UTF-8")
@@ -70,8 +72,7 @@ public class VipController {
             throw new ApiException(HttpStatus.FORBIDDEN, "You can only deactivate VIP for your own listings");
         }
 
-        item.setIsVip(false);
-        return itemRepository.saveAndFlush(item);
+        return itemService.setVip(item, false);
     }
 
     private static Long requireLong(Map<String, Object> request, String key) {
@@ -0,0 +1,21 @@
+package com.example.webshop.dto;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Брой обяви по категория, ценови интервал, продадени/непродадени и VIP –
+ * за филтрите в каталога. {@code priceTo} е null за последния (отворен) интервал.
+ */
+public record FacetCountsDto(
+        Map<String, Long> categories,
+        List<PriceBucket> prices,
+        long sold,
+        long unsold,
+        long vip,
+        long total
+) {
+    public record PriceBucket(BigDecimal priceFrom, BigDecimal priceTo, long count) {
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.webshop.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Галерията на обява без самите байтове – за /items/{id}/images и /image/count.
+ * Редовете от item_image са първи (по ordinal), после останалите http/fs токени от imageUrl.
+ */
+public record ImageManifestDto(int count, List<Image> images) {
+
+    /**
+     * Една снимка. {@code width}/{@code height} се попълват от фоновата обработка
+     * (null, докато не е минала или за външни URL); {@code checksum} е SHA-256, hex.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Image(int index, String mimeType, Long sizeBytes, Integer width, Integer height,
+                        String checksum, String url) {
+    }
+}
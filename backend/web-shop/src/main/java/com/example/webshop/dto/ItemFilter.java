@@ -0,0 +1,18 @@
+package com.example.webshop.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Филтри на GET /items/list – null означава „без ограничение“.
+ */
+public record ItemFilter(
+        String category,
+        BigDecimal minPrice,
+        BigDecimal maxPrice,
+        Boolean sold,
+        Boolean vip
+) {
+    public boolean isEmpty() {
+        return category == null && minPrice == null && maxPrice == null && sold == null && vip == null;
+    }
+}
@@ -21,6 +21,23 @@ public class ItemListDto {
 
     public ItemListDto() {}
 
+    /** За JPQL constructor expression в {@link com.example.webshop.repositories.ItemRepository}. */
+    public ItemListDto(Long id, String title, String description, BigDecimal price, String ownerEmail,
+                       String category, String contactEmail, String contactPhone, Boolean isVip,
+                       Boolean sold, String paymentMethod) {
+        this.id = id;
+        this.title = title;
+        this.description = description;
+        this.price = price;
+        this.ownerEmail = ownerEmail;
+        this.category = category;
+        this.contactEmail = contactEmail;
+        this.contactPhone = contactPhone;
+        this.isVip = isVip != null ? isVip : false;
+        this.sold = sold != null ? sold : false;
+        this.paymentMethod = paymentMethod;
+    }
+
     public static ItemListDto from(com.example.webshop.models.Item item) {
         ItemListDto dto = new ItemListDto();
         dto.setId(item.getId());
@@ -0,0 +1,18 @@
+package com.example.webshop.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Страница от каталога за GET /items/list?after=&limit=.
+ * {@code nextCursor} е null, когато няма следваща страница;
+ * {@code facets} се връща само при ?facets=true.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ItemPageDto(
+        List<ItemListDto> items,
+        String nextCursor,
+        FacetCountsDto facets
+) {
+}
@@ -4,6 +4,7 @@ import com.example.webshop.dto.ErrorResponse;
 import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
@@ -27,9 +28,12 @@ public class GlobalExceptionHandler {
         } else {
             log.error("API {}: {}", ex.getStatus().value(), ex.getMessage());
         }
-        return ResponseEntity
-                .status(ex.getStatus())
-                .body(ErrorResponse.of(request, ex.getStatus(), ex.getMessage()));
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(ex.getStatus());
+        if (ex.getStatus() == HttpStatus.SERVICE_UNAVAILABLE || ex.getStatus() == HttpStatus.TOO_MANY_REQUESTS) {
+            // Претоварване (напр. пълна опашка за BCrypt) – клиентът да опита пак след малко
+            response.header(HttpHeaders.RETRY_AFTER, "1");
+        }
+        return response.body(ErrorResponse.of(request, ex.getStatus(), ex.getMessage()));
     }
 
     @ExceptionHandler(ResponseStatusException.class)
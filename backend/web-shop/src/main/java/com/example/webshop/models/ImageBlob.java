@@ -0,0 +1,68 @@
+package com.example.webshop.models;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Едно съдържание (по SHA-256), споделено от всички {@link ItemImage} със същите байтове.
+ * {@code refCount} е броят такива редове; при 0 редът и blob-ът в хранилището се изтриват.
+ * Записва се с атомарни SQL заявки в {@link com.example.webshop.services.ImageBlobService}.
+ */
+@Entity
+@Table(name = "image_blob")
+public class ImageBlob {
+
+    /** SHA-256 на байтовете, hex. */
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    @Column(nullable = false, length = 16)
+    private String storage;
+
+    @Column(name = "storage_key", nullable = false)
+    private String storageKey;
+
+    @Column(nullable = false, length = 64)
+    private String mimeType;
+
+    @Column(nullable = false)
+    private long sizeBytes;
+
+    @Column(nullable = false)
+    private int refCount;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    public ImageBlob() {
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public String getStorage() {
+        return storage;
+    }
+
+    public String getStorageKey() {
+        return storageKey;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public int getRefCount() {
+        return refCount;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -1,18 +1,25 @@
 package com.example.webshop.models;
 
+import com.example.webshop.config.HibernateCacheConfig;
 import com.example.webshop.config.JsonViews;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonView;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.math.BigDecimal;
 import java.util.List;
 
 @Entity
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler", "reviews"})
+@Cacheable
+// includeLazy = false – base64 LOB-ът в imageUrl не влиза в записа на кеша
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = HibernateCacheConfig.ITEM_REGION, includeLazy = false)
 public class Item {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "item_seq")
+    @SequenceGenerator(name = "item_seq", sequenceName = "item_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -24,7 +31,9 @@ public class Item {
     @Column(nullable = false, precision = 19, scale = 4)
     private BigDecimal price;
 
+    /** Lazy (bytecode enhancement) – списъците и кешът не влачат base64 LOB-а. */
     @Lob
+    @Basic(fetch = FetchType.LAZY)
     @Column(columnDefinition = "TEXT")
     private String imageUrl;
 
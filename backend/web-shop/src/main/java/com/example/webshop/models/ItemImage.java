@@ -0,0 +1,132 @@
+package com.example.webshop.models;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Една снимка на обява – метаданни и ключ в {@link com.example.webshop.storage.BlobStore}
+ * вместо base64 в {@code item.image_url}.
+ * {@code ordinal} е поредният номер в галерията (0, 1, 2…), уникален в рамките на обявата.
+ */
+@Entity
+@Table(name = "item_image",
+        uniqueConstraints = @UniqueConstraint(name = "uk_item_image_item_ordinal", columnNames = {"item_id", "ordinal"}))
+public class ItemImage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "item_image_seq")
+    @SequenceGenerator(name = "item_image_seq", sequenceName = "item_image_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "item_id", nullable = false)
+    private Long itemId;
+
+    @Column(nullable = false)
+    private int ordinal;
+
+    @Column(nullable = false, length = 64)
+    private String mimeType;
+
+    @Column(nullable = false)
+    private long sizeBytes;
+
+    /** Размери в пиксели – попълват се от ImageVariantService след декодиране; null до тогава. */
+    private Integer width;
+
+    private Integer height;
+
+    /** SHA-256 на байтовете, hex. */
+    @Column(nullable = false, length = 64)
+    private String checksum;
+
+    /** Хранилището ({@code db}, {@code fs}, {@code s3}) и ключът в него; null – байтовете са в {@link #data}. */
+    @Column(length = 16)
+    private String storage;
+
+    @Column(name = "storage_key")
+    private String storageKey;
+
+    /** Само за редове отпреди хранилищата. */
+    @Column(columnDefinition = "bytea")
+    private byte[] data;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    /** Кога е минала през ImageRecompressionService; null – още не е. */
+    private LocalDateTime optimizedAt;
+
+    /** Кога ImageVariantService е приключил с умалените варианти; null – още не е. */
+    private LocalDateTime variantsAt;
+
+    public ItemImage() {
+    }
+
+    public ItemImage(Long itemId, int ordinal, String mimeType, String checksum, long sizeBytes,
+                     String storage, String storageKey) {
+        this.itemId = itemId;
+        this.ordinal = ordinal;
+        this.mimeType = mimeType;
+        this.checksum = checksum;
+        this.sizeBytes = sizeBytes;
+        this.storage = storage;
+        this.storageKey = storageKey;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getItemId() {
+        return itemId;
+    }
+
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public Integer getWidth() {
+        return width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public String getStorage() {
+        return storage;
+    }
+
+    public String getStorageKey() {
+        return storageKey;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getOptimizedAt() {
+        return optimizedAt;
+    }
+
+    public LocalDateTime getVariantsAt() {
+        return variantsAt;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.webshop.models;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Умалено копие на {@link ItemImage} с фиксирана ширина (160/480/1080 px), или при
+ * {@code width = 0} – пълният размер в по-компактен формат (WebP) за клиенти, които го приемат.
+ * Генерира се веднъж, във фонов режим, и се пази до оригинала.
+ */
+@Entity
+@Table(name = "item_image_variant",
+        uniqueConstraints = @UniqueConstraint(name = "uk_item_image_variant_image_width", columnNames = {"image_id", "width"}))
+public class ItemImageVariant {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "item_image_variant_seq")
+    @SequenceGenerator(name = "item_image_variant_seq", sequenceName = "item_image_variant_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "image_id", nullable = false)
+    private Long imageId;
+
+    @Column(nullable = false)
+    private int width;
+
+    @Column(nullable = false, length = 64)
+    private String mimeType;
+
+    @Column(nullable = false)
+    private long sizeBytes;
+
+    /** Хранилището ({@code db}, {@code fs}, {@code s3}) и ключът в него; null – байтовете са в {@link #data}. */
+    @Column(length = 16)
+    private String storage;
+
+    @Column(name = "storage_key")
+    private String storageKey;
+
+    /** Само за редове отпреди хранилищата. */
+    @Column(columnDefinition = "bytea")
+    private byte[] data;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    public ItemImageVariant() {
+    }
+
+    public ItemImageVariant(Long imageId, int width, String mimeType, long sizeBytes,
+                            String storage, String storageKey) {
+        this.imageId = imageId;
+        this.width = width;
+        this.mimeType = mimeType;
+        this.sizeBytes = sizeBytes;
+        this.storage = storage;
+        this.storageKey = storageKey;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getImageId() {
+        return imageId;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public String getStorage() {
+        return storage;
+    }
+
+    public String getStorageKey() {
+        return storageKey;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
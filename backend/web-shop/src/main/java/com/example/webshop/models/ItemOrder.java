@@ -9,7 +9,8 @@ import java.time.LocalDateTime;
 public class ItemOrder {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "item_orders_seq")
+    @SequenceGenerator(name = "item_orders_seq", sequenceName = "item_orders_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
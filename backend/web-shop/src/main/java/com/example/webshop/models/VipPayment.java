@@ -9,7 +9,8 @@ import java.time.LocalDateTime;
 public class VipPayment {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "vip_payments_seq")
+    @SequenceGenerator(name = "vip_payments_seq", sequenceName = "vip_payments_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
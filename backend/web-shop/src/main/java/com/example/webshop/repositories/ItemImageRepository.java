@@ -0,0 +1,51 @@
+package com.example.webshop.repositories;
+
+import com.example.webshop.dto.ImageManifestDto;
+import com.example.webshop.models.ItemImage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface ItemImageRepository extends JpaRepository<ItemImage, Long> {
+
+    /** Точно един ред – по индекса (item_id, ordinal). */
+    Optional<ItemImage> findByItemIdAndOrdinal(Long itemId, int ordinal);
+
+    long countByItemId(Long itemId);
+
+    /** Метаданните на галерията без колоната data; споделеното съдържание – с неизменния /images/{sha256}. */
+    @Query("SELECT new com.example.webshop.dto.ImageManifestDto$Image(i.ordinal, i.mimeType, i.sizeBytes, "
+            + "i.width, i.height, i.checksum, "
+            + "CASE WHEN i.storageKey LIKE 'blobs/%' THEN CONCAT('/images/', i.checksum) "
+            + "ELSE CONCAT('/items/', CAST(i.itemId AS string), '/image/raw?index=', CAST(i.ordinal AS string)) END) "
+            + "FROM ItemImage i WHERE i.itemId = :itemId ORDER BY i.ordinal")
+    List<ImageManifestDto.Image> findManifest(@Param("itemId") Long itemId);
+
+    /** Снимки без размери, още необработени – стари редове отпреди фоновата обработка. */
+    @Query("SELECT i.id FROM ItemImage i WHERE i.itemId = :itemId AND i.width IS NULL AND i.variantsAt IS NULL")
+    List<Long> findIdsWithoutDimensions(@Param("itemId") Long itemId);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE ItemImage i SET i.width = :width, i.height = :height WHERE i.id = :id")
+    int updateDimensions(@Param("id") Long id, @Param("width") int width, @Param("height") int height);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE ItemImage i SET i.variantsAt = :at WHERE i.id = :id")
+    int markVariantsDone(@Param("id") Long id, @Param("at") LocalDateTime at);
+
+    @Query("SELECT COALESCE(MAX(i.ordinal), -1) FROM ItemImage i WHERE i.itemId = :itemId")
+    int findMaxOrdinal(@Param("itemId") Long itemId);
+
+    /** Bulk DELETE – без да зарежда байтовете, както би направил derived deleteBy. */
+    @Modifying
+    @Query("DELETE FROM ItemImage i WHERE i.itemId = :itemId")
+    int deleteByItemId(@Param("itemId") Long itemId);
+}
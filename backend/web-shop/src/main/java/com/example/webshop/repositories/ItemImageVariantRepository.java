@@ -0,0 +1,19 @@
+package com.example.webshop.repositories;
+
+import com.example.webshop.models.ItemImageVariant;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
+
+public interface ItemImageVariantRepository extends JpaRepository<ItemImageVariant, Long> {
+
+    Optional<ItemImageVariant> findByImageIdAndWidth(Long imageId, int width);
+
+    /** Вариантите на всички снимки на обявата – преди да се изтрият самите снимки. */
+    @Modifying
+    @Query("DELETE FROM ItemImageVariant v WHERE v.imageId IN (SELECT i.id FROM ItemImage i WHERE i.itemId = :itemId)")
+    int deleteByItemId(@Param("itemId") Long itemId);
+}
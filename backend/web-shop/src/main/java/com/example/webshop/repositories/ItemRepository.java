@@ -1,7 +1,75 @@
 package com.example.webshop.repositories;
 
+import com.example.webshop.config.HibernateCacheConfig;
+import com.example.webshop.dto.ItemListDto;
 import com.example.webshop.models.Item;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface ItemRepository extends JpaRepository<Item, Long> {
+
+    /**
+     * Проекция за списъци – изброени колони, без image_url, за да не се чете
+     * base64 LOB-ът на всеки ред.
+     */
+    String LIST_PROJECTION = "new com.example.webshop.dto.ItemListDto("
+            + "i.id, i.title, i.description, i.price, i.ownerEmail, i.category, "
+            + "i.contactEmail, i.contactPhone, i.isVip, i.sold, i.paymentMethod)";
+
+    /** Само imageUrl ('' при null) – без останалите колони; празно, ако обявата не съществува. */
+    @Query("SELECT COALESCE(i.imageUrl, '') FROM Item i WHERE i.id = :id")
+    Optional<String> findImageUrlById(@Param("id") Long id);
+
+    /**
+     * Целият каталог със снимките – VIP първи, после по id. Чете се с forward-only
+     * курсор по един ред (fetch size 1, read-only), затова трябва да се консумира
+     * в транзакция и да се затвори.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            // целият каталог не минава през second-level cache – не изтласква горещите обяви
+            @QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "IGNORE")
+    })
+    // imageUrl е lazy – графът го чете в същата заявка, без отделен SELECT на ред
+    @EntityGraph(attributePaths = "imageUrl")
+    @Query("SELECT i FROM Item i ORDER BY i.isVip DESC, i.id ASC")
+    Stream<Item> streamAllOrdered();
+
+    /** Целият каталог за list view – същата подредба, без image_url. */
+    @Query("SELECT " + LIST_PROJECTION + " FROM Item i ORDER BY i.isVip DESC, i.id ASC")
+    List<ItemListDto> findAllListRows();
+
+    /**
+     * Keyset страница в рамките на един VIP сегмент – обслужва се от индекса (is_vip, id).
+     * Филтрите са по избор: null параметър не ограничава. Резултатът е в query cache
+     * (собствен регион – JDBC вмъкванията в {@code ItemService} го изчистват).
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = HibernateCacheConfig.ITEM_PAGE_REGION)
+    })
+    @Query("SELECT " + LIST_PROJECTION + " FROM Item i WHERE i.isVip = :vip AND i.id > :afterId"
+            + " AND (:category IS NULL OR i.category = :category)"
+            + " AND (:minPrice IS NULL OR i.price >= :minPrice)"
+            + " AND (:maxPrice IS NULL OR i.price <= :maxPrice)"
+            + " AND (:sold IS NULL OR i.sold = :sold)"
+            + " ORDER BY i.id ASC")
+    List<ItemListDto> findListPageAfter(@Param("vip") boolean vip, @Param("afterId") long afterId,
+                                        @Param("category") String category,
+                                        @Param("minPrice") BigDecimal minPrice,
+                                        @Param("maxPrice") BigDecimal maxPrice,
+                                        @Param("sold") Boolean sold,
+                                        Pageable page);
 }
@@ -0,0 +1,145 @@
+package com.example.webshop.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Токенизатор за търсене на български: малки букви, латиница → кирилица
+ * (обратно на обтекаемата система – "sht" → "щ", "zh" → "ж"…), сгъване на
+ * двусмислени букви (ъ/а, й/и) и лек стемер, който реже членуване и множествено число.
+ * Прилага се еднакво и на обявите, и на заявката, затова двете страни съвпадат
+ * независимо дали потребителят пише "telefon", "телефона" или "ТЕЛЕФОНИ".
+ */
+public final class BulgarianAnalyzer {
+
+    private static final int MIN_STEM = 3;
+
+    /** Наставки, подредени от най-дълга към най-къса (след сгъване ъ → а). */
+    private static final String[] SUFFIXES = {
+            "ищата", "овете", "евете", "ията",
+            "ите", "ата", "ята", "ото", "ове", "еве", "ища", "иат", "ият",
+            "ат", "ят", "та", "то", "те", "ия",
+            "а", "я", "о", "е", "и", "у"
+    };
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "и", "в", "във", "на", "с", "със", "за", "от", "по", "да", "се", "не", "е", "са",
+            "до", "при", "или", "но", "като", "че", "ли", "ще", "а", "the", "and", "for"
+    );
+
+    private static final String[][] LATIN_DIGRAPHS = {
+            {"sht", "щ"}, {"zh", "ж"}, {"ts", "ц"}, {"ch", "ч"}, {"sh", "ш"}, {"yu", "ю"}, {"ya", "я"}
+    };
+
+    private BulgarianAnalyzer() {
+    }
+
+    public static List<String> analyze(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int i = 0;
+        while (i < lower.length()) {
+            while (i < lower.length() && !Character.isLetterOrDigit(lower.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < lower.length() && Character.isLetterOrDigit(lower.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                String term = normalize(lower.substring(start, i));
+                if (!term.isEmpty()) {
+                    terms.add(term);
+                }
+            }
+        }
+        return terms;
+    }
+
+    /** Една дума → термин в индекса; празен низ за стоп думи. */
+    static String normalize(String word) {
+        if (STOP_WORDS.contains(word)) {
+            return "";
+        }
+        String folded = fold(transliterate(word));
+        if (folded.isEmpty() || STOP_WORDS.contains(folded)
+                || (folded.length() < 2 && !Character.isDigit(folded.charAt(0)))) {
+            return "";
+        }
+        return stem(folded);
+    }
+
+    static String transliterate(String word) {
+        StringBuilder out = new StringBuilder(word.length());
+        int i = 0;
+        outer:
+        while (i < word.length()) {
+            for (String[] digraph : LATIN_DIGRAPHS) {
+                if (word.startsWith(digraph[0], i)) {
+                    out.append(digraph[1]);
+                    i += digraph[0].length();
+                    continue outer;
+                }
+            }
+            char c = word.charAt(i++);
+            switch (c) {
+                case 'a' -> out.append('а');
+                case 'b' -> out.append('б');
+                case 'c' -> out.append('ц');
+                case 'd' -> out.append('д');
+                case 'e' -> out.append('е');
+                case 'f' -> out.append('ф');
+                case 'g' -> out.append('г');
+                case 'h' -> out.append('х');
+                case 'i' -> out.append('и');
+                case 'j' -> out.append('й');
+                case 'k', 'q' -> out.append('к');
+                case 'l' -> out.append('л');
+                case 'm' -> out.append('м');
+                case 'n' -> out.append('н');
+                case 'o' -> out.append('о');
+                case 'p' -> out.append('п');
+                case 'r' -> out.append('р');
+                case 's' -> out.append('с');
+                case 't' -> out.append('т');
+                case 'u' -> out.append('у');
+                case 'v', 'w' -> out.append('в');
+                case 'x' -> out.append("кс");
+                case 'y' -> out.append('й');
+                case 'z' -> out.append('з');
+                default -> out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /** Букви, които на латиница се изписват еднакво, се свеждат до една форма. */
+    private static String fold(String word) {
+        StringBuilder out = new StringBuilder(word.length());
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            switch (c) {
+                case 'ъ' -> out.append('а');
+                case 'й', 'ы' -> out.append('и');
+                case 'э' -> out.append('е');
+                case 'ь' -> { }
+                default -> out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    private static String stem(String word) {
+        for (String suffix : SUFFIXES) {
+            if (word.endsWith(suffix) && word.length() - suffix.length() >= MIN_STEM) {
+                return word.substring(0, word.length() - suffix.length());
+            }
+        }
+        return word;
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.webshop.search;
+
+import com.example.webshop.dto.ItemListDto;
+import com.example.webshop.repositories.ItemRepository;
+import com.example.webshop.services.ItemChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Обърнат индекс в паметта върху title, description и category.
+ * Построява се веднъж при старт (проекция без image_url) и после се поддържа
+ * инкрементално от {@link ItemChangedEvent} – без пълно преиндексиране.
+ * Класиране: TF-IDF с тегла по поле; последната дума от заявката съвпада и като префикс.
+ */
+@Component
+public class ItemSearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ItemSearchIndex.class);
+
+    private static final float TITLE_WEIGHT = 3f;
+    private static final float CATEGORY_WEIGHT = 2f;
+    private static final float DESCRIPTION_WEIGHT = 1f;
+    /** Префиксно съвпадение тежи по-малко от пълно. */
+    private static final float PREFIX_FACTOR = 0.5f;
+    private static final int MIN_PREFIX = 3;
+
+    private final ItemRepository itemRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /** термин → (id на обява → претеглена честота) */
+    private final TreeMap<String, Map<Long, Float>> postings = new TreeMap<>();
+    private final Map<Long, IndexedItem> items = new HashMap<>();
+
+    public ItemSearchIndex(ItemRepository itemRepository) {
+        this.itemRepository = itemRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        lock.writeLock().lock();
+        try {
+            long start = System.currentTimeMillis();
+            for (ItemListDto item : itemRepository.findAllListRows()) {
+                put(item);
+            }
+            logger.info("Search index built: {} items, {} terms in {}ms",
+                    items.size(), postings.size(), System.currentTimeMillis() - start);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onItemChanged(ItemChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            remove(event.getItemId());
+            if (!event.isDeleted()) {
+                put(event.getItem());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<ItemListDto> search(String query, int limit) {
+        List<String> terms = BulgarianAnalyzer.analyze(query);
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            Map<Long, Float> scores = null;
+            for (int t = 0; t < terms.size(); t++) {
+                boolean last = t == terms.size() - 1;
+                Map<Long, Float> termScores = scoreTerm(terms.get(t), last);
+                // Всички думи от заявката трябва да присъстват (AND)
+                if (scores == null) {
+                    scores = termScores;
+                } else {
+                    Map<Long, Float> merged = new HashMap<>();
+                    for (Map.Entry<Long, Float> e : scores.entrySet()) {
+                        Float s = termScores.get(e.getKey());
+                        if (s != null) {
+                            merged.put(e.getKey(), e.getValue() + s);
+                        }
+                    }
+                    scores = merged;
+                }
+                if (scores.isEmpty()) {
+                    return List.of();
+                }
+            }
+            final Map<Long, Float> finalScores = scores;
+            return finalScores.keySet().stream()
+                    .map(items::get)
+                    .sorted(Comparator
+                            .comparing((IndexedItem i) -> -finalScores.get(i.dto.getId()))
+                            .thenComparing(i -> !Boolean.TRUE.equals(i.dto.getIsVip()))
+                            .thenComparing(i -> i.dto.getId()))
+                    .limit(limit)
+                    .map(i -> i.dto)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<Long, Float> scoreTerm(String term, boolean allowPrefix) {
+        Map<Long, Float> result = new HashMap<>();
+        addScores(result, term, postings.get(term), 1f);
+        if (allowPrefix && term.length() >= MIN_PREFIX) {
+            SortedMap<String, Map<Long, Float>> tail = postings.subMap(term, term + Character.MAX_VALUE);
+            for (Map.Entry<String, Map<Long, Float>> e : tail.entrySet()) {
+                if (!e.getKey().equals(term)) {
+                    addScores(result, e.getKey(), e.getValue(), PREFIX_FACTOR);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void addScores(Map<Long, Float> result, String term, Map<Long, Float> docs, float factor) {
+        if (docs == null || docs.isEmpty()) {
+            return;
+        }
+        float idf = (float) Math.log(1 + (double) items.size() / docs.size());
+        for (Map.Entry<Long, Float> d : docs.entrySet()) {
+            result.merge(d.getKey(), d.getValue() * idf * factor, Math::max);
+        }
+    }
+
+    private void put(ItemListDto item) {
+        Map<String, Float> weights = new HashMap<>();
+        addField(weights, item.getTitle(), TITLE_WEIGHT);
+        addField(weights, item.getCategory(), CATEGORY_WEIGHT);
+        addField(weights, item.getDescription(), DESCRIPTION_WEIGHT);
+        for (Map.Entry<String, Float> w : weights.entrySet()) {
+            // log-нормализирана честота, за да не печелят дългите описания с повторения
+            float tf = (float) (1 + Math.log(w.getValue()));
+            postings.computeIfAbsent(w.getKey(), k -> new HashMap<>()).put(item.getId(), tf);
+        }
+        items.put(item.getId(), new IndexedItem(item, new HashSet<>(weights.keySet())));
+    }
+
+    private void remove(Long itemId) {
+        IndexedItem old = items.remove(itemId);
+        if (old == null) {
+            return;
+        }
+        for (String term : old.terms) {
+            Map<Long, Float> docs = postings.get(term);
+            if (docs != null) {
+                docs.remove(itemId);
+                if (docs.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    private static void addField(Map<String, Float> weights, String text, float weight) {
+        for (String term : BulgarianAnalyzer.analyze(text)) {
+            weights.merge(term, weight, Float::sum);
+        }
+    }
+
+    private static final class IndexedItem {
+        final ItemListDto dto;
+        final Set<String> terms;
+
+        IndexedItem(ItemListDto dto, Set<String> terms) {
+            this.dto = dto;
+            this.terms = terms;
+        }
+    }
+}
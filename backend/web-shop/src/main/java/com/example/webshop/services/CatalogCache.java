@@ -0,0 +1,141 @@
+package com.example.webshop.services;
+
+import com.example.webshop.dto.ItemListDto;
+import com.example.webshop.repositories.ItemRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Неизменима, предварително сортирана снимка на каталога за GET /items/list.
+ * Записите през {@link ItemService} я „закърпват“ след commit; ако промяна съвпадне с построяване,
+ * се обслужва старата снимка, докато една-единствена фонова заявка я построи наново.
+ * Метрики: catalog.cache.hits / misses / rebuild (през /actuator/metrics).
+ */
+@Component
+public class CatalogCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogCache.class);
+
+    /** Същата подредба като в SQL: VIP първи, после по id. */
+    private static final Comparator<ItemListDto> CATALOG_ORDER = Comparator
+            .comparing((ItemListDto i) -> !Boolean.TRUE.equals(i.getIsVip()))
+            .thenComparing(ItemListDto::getId);
+
+    private final ItemRepository itemRepository;
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer rebuildTimer;
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "catalog-rebuild");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile Snapshot snapshot;
+    /** Текущото построяване (single-flight); null когато няма такова. */
+    private final AtomicReference<CompletableFuture<Snapshot>> inFlight = new AtomicReference<>();
+    /** Брояч на промените – построяване, започнало преди промяна, не се счита за актуално. */
+    private final AtomicLong generation = new AtomicLong();
+
+    public CatalogCache(ItemRepository itemRepository, MeterRegistry meterRegistry) {
+        this.itemRepository = itemRepository;
+        this.hits = meterRegistry.counter("catalog.cache.hits");
+        this.misses = meterRegistry.counter("catalog.cache.misses");
+        this.rebuildTimer = meterRegistry.timer("catalog.cache.rebuild");
+    }
+
+    public List<ItemListDto> getList() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            hits.increment();
+            if (current.stale) {
+                rebuildAsync();
+            }
+            return current.items;
+        }
+        misses.increment();
+        return rebuild().join().items;
+    }
+
+    @Order(0)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onItemChanged(ItemChangedEvent event) {
+        generation.incrementAndGet();
+        synchronized (this) {
+            Snapshot current = snapshot;
+            if (current == null) {
+                return;
+            }
+            List<ItemListDto> items = new ArrayList<>(current.items);
+            items.removeIf(i -> i.getId().equals(event.getItemId()));
+            if (!event.isDeleted()) {
+                int pos = Collections.binarySearch(items, event.getItem(), CATALOG_ORDER);
+                items.add(pos < 0 ? -pos - 1 : pos, event.getItem());
+            }
+            snapshot = new Snapshot(List.copyOf(items), current.stale);
+        }
+    }
+
+    private void rebuildAsync() {
+        if (inFlight.get() == null) {
+            rebuildExecutor.execute(this::rebuild);
+        }
+    }
+
+    /** Single-flight: конкурентните заявки чакат същото построяване вместо да пускат свое. */
+    private CompletableFuture<Snapshot> rebuild() {
+        CompletableFuture<Snapshot> mine = new CompletableFuture<>();
+        CompletableFuture<Snapshot> existing = inFlight.compareAndExchange(null, mine);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            long startGeneration = generation.get();
+            Snapshot built = rebuildTimer.record(() -> new Snapshot(List.copyOf(itemRepository.findAllListRows()), false));
+            synchronized (this) {
+                // Промяна по време на четенето – пазим резултата, но го маркираме за ново построяване
+                snapshot = generation.get() == startGeneration ? built : new Snapshot(built.items, true);
+            }
+            logger.debug("Catalog snapshot rebuilt: {} items", built.items.size());
+            mine.complete(built);
+        } catch (RuntimeException e) {
+            logger.warn("Catalog snapshot rebuild failed: {}", e.getMessage());
+            mine.completeExceptionally(e);
+        } finally {
+            inFlight.set(null);
+        }
+        return mine;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    private static final class Snapshot {
+        final List<ItemListDto> items;
+        final boolean stale;
+
+        Snapshot(List<ItemListDto> items, boolean stale) {
+            this.items = items;
+            this.stale = stale;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.webshop.services;
+
+import com.example.webshop.dto.FacetCountsDto;
+import com.example.webshop.dto.ItemListDto;
+import com.example.webshop.repositories.ItemRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Предварително изчислени броячи за филтрите на каталога. Пълнят се веднъж при старт
+ * и после се поддържат инкрементално от {@link ItemChangedEvent} (старото състояние
+ * на обявата се изважда, новото се добавя) – без GROUP BY при всяка заявка.
+ */
+@Component
+public class CatalogFacets {
+
+    /** Граници на ценовите интервали в EUR; последният интервал е отворен нагоре. */
+    private static final BigDecimal[] PRICE_EDGES = {
+            BigDecimal.ZERO, new BigDecimal("10"), new BigDecimal("25"), new BigDecimal("50"),
+            new BigDecimal("100"), new BigDecimal("250"), new BigDecimal("500"),
+            new BigDecimal("1000"), new BigDecimal("2500")
+    };
+
+    private final ItemRepository itemRepository;
+
+    /** Какво е преброено за всяка обява – нужно, за да се извади при промяна. */
+    private final Map<Long, Counted> counted = new HashMap<>();
+    private final Map<String, Long> categories = new HashMap<>();
+    private final long[] priceBuckets = new long[PRICE_EDGES.length];
+    private long sold;
+    private long vip;
+
+    public CatalogFacets(ItemRepository itemRepository) {
+        this.itemRepository = itemRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void load() {
+        for (ItemListDto item : itemRepository.findAllListRows()) {
+            replace(item.getId(), item);
+        }
+    }
+
+    @Order(0)
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onItemChanged(ItemChangedEvent event) {
+        replace(event.getItemId(), event.getItem());
+    }
+
+    public synchronized FacetCountsDto snapshot() {
+        List<FacetCountsDto.PriceBucket> prices = new ArrayList<>(PRICE_EDGES.length);
+        for (int b = 0; b < PRICE_EDGES.length; b++) {
+            BigDecimal to = b + 1 < PRICE_EDGES.length ? PRICE_EDGES[b + 1] : null;
+            prices.add(new FacetCountsDto.PriceBucket(PRICE_EDGES[b], to, priceBuckets[b]));
+        }
+        long total = counted.size();
+        return new FacetCountsDto(new TreeMap<>(categories), prices, sold, total - sold, vip, total);
+    }
+
+    private void replace(Long itemId, ItemListDto item) {
+        Counted old = counted.remove(itemId);
+        if (old != null) {
+            apply(old, -1);
+        }
+        if (item != null) {
+            Counted now = new Counted(item.getCategory(), bucketOf(item.getPrice()),
+                    Boolean.TRUE.equals(item.getSold()), Boolean.TRUE.equals(item.getIsVip()));
+            counted.put(itemId, now);
+            apply(now, 1);
+        }
+    }
+
+    private void apply(Counted c, int delta) {
+        if (c.category != null && !c.category.isBlank()) {
+            long n = categories.merge(c.category, (long) delta, Long::sum);
+            if (n <= 0) {
+                categories.remove(c.category);
+            }
+        }
+        if (c.bucket >= 0) {
+            priceBuckets[c.bucket] += delta;
+        }
+        if (c.sold) {
+            sold += delta;
+        }
+        if (c.vip) {
+            vip += delta;
+        }
+    }
+
+    private static int bucketOf(BigDecimal price) {
+        if (price == null || price.signum() < 0) {
+            return -1;
+        }
+        for (int b = PRICE_EDGES.length - 1; b >= 0; b--) {
+            if (price.compareTo(PRICE_EDGES[b]) >= 0) {
+                return b;
+            }
+        }
+        return 0;
+    }
+
+    private record Counted(String category, int bucket, boolean sold, boolean vip) {
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.webshop.services;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Монотонна версия на каталога и на всяка обява – за ETag / If-None-Match.
+ * Вдига се от всеки запис през {@link ItemChangedEvent}, след като кешът и фасетите
+ * са обновени (най-нисък приоритет), така че нова версия никога не етикетира стари данни.
+ * Епохата (времето на старт) влиза в ETag-а, за да не съвпадат версии след рестарт.
+ */
+@Component
+public class CatalogVersions {
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong catalogVersion = new AtomicLong();
+    private final ConcurrentHashMap<Long, Long> itemVersions = new ConcurrentHashMap<>();
+
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onItemChanged(ItemChangedEvent event) {
+        long version = catalogVersion.incrementAndGet();
+        itemVersions.put(event.getItemId(), version);
+    }
+
+    public long catalogVersion() {
+        return catalogVersion.get();
+    }
+
+    public long itemVersion(Long itemId) {
+        return itemVersions.getOrDefault(itemId, 0L);
+    }
+
+    /** ETag за списъци; {@code variant} (напр. query string) различава представянията. */
+    public String catalogETag(String variant) {
+        String suffix = variant == null || variant.isEmpty() ? "" : "-" + Integer.toHexString(variant.hashCode());
+        return "\"c" + epoch + "-" + catalogVersion.get() + suffix + "\"";
+    }
+
+    public String itemETag(Long itemId) {
+        return "\"i" + epoch + "-" + itemId + "-" + itemVersion(itemId) + "\"";
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.webshop.services;
+
+import com.example.webshop.exception.ApiException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Поточен експорт на каталога, поръчките и съобщенията като NDJSON или CSV.
+ * Редовете идват от server-side курсор (fetch size {@value #FETCH_SIZE} в read-only транзакция)
+ * и се записват директно в изхода – паметта не зависи от броя на редовете.
+ * Байтовете на снимките не се експортират; обявите носят само id-тата на снимките си.
+ */
+@Service
+public class ExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExportService.class);
+
+    private static final int FETCH_SIZE = 500;
+    /** Пълен експорт може да е по-дълъг от spring.transaction.default-timeout. */
+    private static final int TIMEOUT_SECONDS = 30 * 60;
+
+    public enum Dataset {
+        ITEMS("items", """
+                SELECT i.id, i.title, i.description, i.price, i.owner_email, i.category,
+                       i.contact_email, i.contact_phone, i.payment_method, i.is_vip, i.sold,
+                       (SELECT STRING_AGG(CAST(ii.id AS VARCHAR), ' ' ORDER BY ii.ordinal)
+                          FROM item_image ii WHERE ii.item_id = i.id) AS image_ids
+                FROM item i ORDER BY i.id"""),
+        ORDERS("orders", """
+                SELECT o.id AS order_id, o.customer_email, o.status, o.total_price, o.created_at,
+                       oi.id AS order_item_id, oi.product_name, oi.price, oi.quantity
+                FROM orders o LEFT JOIN order_item oi ON oi.order_id = o.id
+                ORDER BY o.id, oi.id"""),
+        ITEM_ORDERS("item-orders", """
+                SELECT id, item_id, customer_email, customer_name, customer_phone, payment_method,
+                       delivery_method, delivery_address, total_price, status, created_at
+                FROM item_orders ORDER BY id"""),
+        MESSAGES("messages", """
+                SELECT id, item_id, sender_email, content, response, created_at
+                FROM messages ORDER BY id""");
+
+        private final String path;
+        private final String sql;
+
+        Dataset(String path, String sql) {
+            this.path = path;
+            this.sql = sql;
+        }
+
+        public String path() {
+            return path;
+        }
+
+        public static Dataset fromPath(String path) {
+            return Arrays.stream(values()).filter(d -> d.path.equals(path)).findFirst()
+                    .orElseThrow(() -> new ApiException(HttpStatus.NOT_FOUND, "Unknown export: " + path));
+        }
+    }
+
+    public enum Format {
+        NDJSON("ndjson", "application/x-ndjson"),
+        CSV("csv", "text/csv");
+
+        private final String extension;
+        private final String contentType;
+
+        Format(String extension, String contentType) {
+            this.extension = extension;
+            this.contentType = contentType;
+        }
+
+        public String extension() {
+            return extension;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public static Format parse(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new ApiException(HttpStatus.BAD_REQUEST, "Unsupported export format: " + value);
+            }
+        }
+    }
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final CsvMapper csvMapper = new CsvMapper();
+    private final List<String> allowedEmails;
+    /** Всеки експорт държи връзка от пула, докато клиентът чете – ограничаваме едновременните. */
+    private final Semaphore slots;
+
+    public ExportService(DataSource dataSource, PlatformTransactionManager transactionManager,
+                         ObjectMapper objectMapper,
+                         @Value("${app.export.allowed-emails:}") List<String> allowedEmails,
+                         @Value("${app.export.max-concurrent:2}") int maxConcurrent) {
+        this.jdbc = new JdbcTemplate(dataSource);
+        this.jdbc.setFetchSize(FETCH_SIZE);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // PostgreSQL държи курсор само извън autocommit – затова експортът е в транзакция
+        this.transactionTemplate.setReadOnly(true);
+        this.transactionTemplate.setTimeout(TIMEOUT_SECONDS);
+        this.objectMapper = objectMapper;
+        this.allowedEmails = allowedEmails.stream().map(String::trim).filter(s -> !s.isEmpty()).toList();
+        this.slots = new Semaphore(Math.max(1, maxConcurrent));
+    }
+
+    /** Само потребителите от app.export.allowed-emails; празен списък – експортът е изключен. */
+    public void requireAllowed(String email) {
+        if (email == null || !allowedEmails.contains(email)) {
+            throw new ApiException(HttpStatus.FORBIDDEN, "Export is not allowed for this user");
+        }
+    }
+
+    /**
+     * Записва всички редове в изхода от {@code target} и го затваря; връща броя на редовете.
+     * При зает лимит (app.export.max-concurrent) – 503, преди {@code target} да е отворен.
+     */
+    public long export(Dataset dataset, Format format, Target target) throws IOException {
+        if (!slots.tryAcquire()) {
+            throw new ApiException(HttpStatus.SERVICE_UNAVAILABLE, "Too many exports in progress. Please try again later.");
+        }
+        try {
+            OutputStream out = target.open();
+            return export(dataset, format, out);
+        } finally {
+            slots.release();
+        }
+    }
+
+    private long export(Dataset dataset, Format format, OutputStream out) {
+        long started = System.currentTimeMillis();
+        Long rows = transactionTemplate.execute(status -> {
+            RowSink sink = new RowSink(format, out);
+            try {
+                jdbc.query(dataset.sql, sink::write);
+                return sink.rows;
+            } finally {
+                sink.close();
+            }
+        });
+        logger.info("Export {} ({}): {} row(s) in {} ms", dataset.path, format, rows,
+                System.currentTimeMillis() - started);
+        return rows == null ? 0 : rows;
+    }
+
+    /** Отваря изхода (и задава заглавките на отговора) едва след като има свободно място. */
+    @FunctionalInterface
+    public interface Target {
+        OutputStream open() throws IOException;
+    }
+
+    /** Колоните се вземат от ResultSetMetaData при първия ред. */
+    private final class RowSink {
+
+        private final Format format;
+        private final OutputStream out;
+        private String[] columns;
+        private Object[] values;
+        private JsonGenerator json;
+        private SequenceWriter csv;
+        long rows;
+
+        RowSink(Format format, OutputStream out) {
+            this.format = format;
+            this.out = out;
+        }
+
+        void write(ResultSet rs) throws SQLException {
+            try {
+                if (columns == null) {
+                    start(rs.getMetaData());
+                }
+                for (int i = 0; i < columns.length; i++) {
+                    values[i] = value(rs.getObject(i + 1));
+                }
+                if (format == Format.CSV) {
+                    // CsvGenerator пропуска null в масив и измества колоните – празна клетка вместо това
+                    for (int i = 0; i < values.length; i++) {
+                        if (values[i] == null) {
+                            values[i] = "";
+                        }
+                    }
+                    csv.write(values);
+                } else {
+                    json.writeStartObject();
+                    for (int i = 0; i < columns.length; i++) {
+                        json.writeFieldName(columns[i]);
+                        json.writeObject(values[i]);
+                    }
+                    json.writeEndObject();
+                    json.writeRaw('\n');
+                }
+                rows++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void start(ResultSetMetaData meta) throws SQLException, IOException {
+            columns = new String[meta.getColumnCount()];
+            values = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = meta.getColumnLabel(i + 1).toLowerCase(Locale.ROOT);
+            }
+            if (format == Format.CSV) {
+                CsvSchema.Builder schema = CsvSchema.builder().setUseHeader(true);
+                for (String column : columns) {
+                    schema.addColumn(column);
+                }
+                csv = csvMapper.writer(schema.build()).writeValues(out);
+            } else {
+                json = objectMapper.getFactory().createGenerator(out);
+                json.setRootValueSeparator(null); // редовете се разделят с \n, без интервал
+            }
+        }
+
+        private static Object value(Object value) {
+            if (value instanceof Timestamp timestamp) {
+                return timestamp.toLocalDateTime().toString();
+            }
+            return value;
+        }
+
+        /** Затваря генератора (и {@code out}, вкл. gzip); празен резултат е празен отговор. */
+        void close() {
+            try {
+                if (csv != null) {
+                    csv.close();
+                } else if (json != null) {
+                    json.close();
+                } else {
+                    out.close();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
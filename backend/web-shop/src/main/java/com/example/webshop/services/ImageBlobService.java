@@ -0,0 +1,93 @@
+package com.example.webshop.services;
+
+import com.example.webshop.storage.BlobStores;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Съдържанието на снимките по SHA-256 (таблица {@code image_blob}) с броене на препратките:
+ * еднакви качвания делят един blob, а той се трие едва когато последната препратка изчезне.
+ * Ключът в хранилището е {@code blobs/<hash>/<uuid>} – нов при всяко създаване, за да не
+ * изтрие закъсняло почистване blob, качен отново след като броячът е стигнал 0.
+ */
+@Service
+public class ImageBlobService {
+
+    public static final String KEY_PREFIX = "blobs/";
+
+    private final JdbcTemplate jdbc;
+    private final BlobStores blobStores;
+
+    public ImageBlobService(JdbcTemplate jdbc, BlobStores blobStores) {
+        this.jdbc = jdbc;
+        this.blobStores = blobStores;
+    }
+
+    /** Къде са байтовете на съдържанието. */
+    public record BlobRef(String hash, String storage, String storageKey, String mimeType, long sizeBytes) {
+    }
+
+    /**
+     * +1 препратка към {@code hash}; при ново съдържание байтовете се качват от {@code source}.
+     * Конкурентно качване на същото съдържание чака на уникалния ключ до commit-а на първото.
+     */
+    @Transactional
+    public BlobRef acquire(String hash, String mimeType, long length, InputStreamSource source) {
+        // Втори опит само ако редът е изтрит от release() между INSERT-а и увеличаването
+        for (int attempt = 0; attempt < 2; attempt++) {
+            String key = KEY_PREFIX + hash + "/" + UUID.randomUUID();
+            int created = jdbc.update("INSERT INTO image_blob (hash, storage, storage_key, mime_type, size_bytes, ref_count, created_at) "
+                            + "VALUES (?, ?, ?, ?, ?, 0, ?) ON CONFLICT (hash) DO NOTHING",
+                    hash, blobStores.active().name(), key, mimeType, length, Timestamp.valueOf(LocalDateTime.now()));
+            if (created == 1) {
+                try (InputStream in = source.getInputStream()) {
+                    blobStores.put(key, in, length, mimeType);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            if (jdbc.update("UPDATE image_blob SET ref_count = ref_count + 1 WHERE hash = ?", hash) == 1) {
+                return find(hash).orElseThrow();
+            }
+        }
+        throw new IllegalStateException("Cannot acquire image_blob " + hash);
+    }
+
+    /** -1 препратка; при 0 редът се трие веднага, а blob-ът – след commit. */
+    @Transactional
+    public void release(String hash) {
+        jdbc.update("UPDATE image_blob SET ref_count = ref_count - 1 WHERE hash = ?", hash);
+        Optional<BlobRef> ref = find(hash);
+        if (ref.isPresent() && jdbc.update("DELETE FROM image_blob WHERE hash = ? AND ref_count <= 0", hash) == 1) {
+            blobStores.deleteAfterCommit(ref.get().storage(), ref.get().storageKey());
+        }
+    }
+
+    public Optional<BlobRef> find(String hash) {
+        List<BlobRef> rows = jdbc.query(
+                "SELECT hash, storage, storage_key, mime_type, size_bytes FROM image_blob WHERE hash = ?",
+                (rs, i) -> new BlobRef(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getLong(5)),
+                hash);
+        return rows.stream().findFirst();
+    }
+
+    public Optional<byte[]> readBytes(BlobRef ref) {
+        return blobStores.read(ref.storage(), ref.storageKey(), null);
+    }
+
+    /** Ред в item_image, който сочи към споделено съдържание (а не към собствен blob). */
+    public static boolean isShared(String storageKey) {
+        return storageKey != null && storageKey.startsWith(KEY_PREFIX);
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.webshop.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU кеш на вече декодираните байтове за /items/{id}/image/raw, ограничен по общ размер.
+ * Байтовете стоят в direct (off-heap) буфери, за да не натоварват heap-а и GC.
+ * Ключът включва версията на обявата от {@link CatalogVersions}, а всеки запис по обявата
+ * изчиства нейните записи. Метрики: image.cache.hits / misses / hit.ratio / resident.bytes.
+ */
+@Component
+public class ImageBytesCache {
+
+    /** Отделна снимка над този размер не се кешира – би изместила твърде много други. */
+    private static final int MAX_ENTRY_BYTES = 2 * 1024 * 1024;
+
+    private final long budgetBytes;
+    private final CatalogVersions catalogVersions;
+    private final Counter hits;
+    private final Counter misses;
+
+    /** accessOrder=true – итерацията започва от най-отдавна използвания запис. */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long residentBytes;
+
+    public ImageBytesCache(@Value("${app.images.cache-bytes:33554432}") long budgetBytes,
+                           CatalogVersions catalogVersions, MeterRegistry meterRegistry) {
+        this.budgetBytes = budgetBytes;
+        this.catalogVersions = catalogVersions;
+        this.hits = meterRegistry.counter("image.cache.hits");
+        this.misses = meterRegistry.counter("image.cache.misses");
+        Gauge.builder("image.cache.resident.bytes", this, ImageBytesCache::residentBytes)
+                .baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("image.cache.entries", this, c -> c.size()).register(meterRegistry);
+        Gauge.builder("image.cache.hit.ratio", this, ImageBytesCache::hitRatio).register(meterRegistry);
+    }
+
+    /**
+     * Ключ за текущата версия на обявата; {@code size} е 0 за оригинала, {@code format} –
+     * договореният по Accept формат (напр. image/webp) или празен низ.
+     */
+    public Key key(Long itemId, int index, int size, String format) {
+        return new Key(itemId, index, size, format, catalogVersions.itemVersion(itemId));
+    }
+
+    /** Само за четене; null при липса. */
+    public Entry get(Key key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return entry;
+    }
+
+    public void put(Key key, String mimeType, byte[] bytes) {
+        if (bytes.length == 0 || bytes.length > MAX_ENTRY_BYTES || bytes.length > budgetBytes) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        Entry entry = new Entry(mimeType, buffer.asReadOnlyBuffer());
+        synchronized (this) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                residentBytes -= previous.length();
+            }
+            residentBytes += bytes.length;
+            Iterator<Entry> it = entries.values().iterator();
+            while (residentBytes > budgetBytes && it.hasNext()) {
+                residentBytes -= it.next().length();
+                it.remove();
+            }
+        }
+    }
+
+    /** Качване, промяна или изтриване на обявата – махаме всичките ѝ снимки. */
+    @Order(0)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onItemChanged(ItemChangedEvent event) {
+        evictItem(event.getItemId());
+    }
+
+    public synchronized void evictItem(Long itemId) {
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> e = it.next();
+            if (e.getKey().itemId().equals(itemId)) {
+                residentBytes -= e.getValue().length();
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized long residentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private double hitRatio() {
+        double h = hits.count();
+        double total = h + misses.count();
+        return total == 0 ? 0 : h / total;
+    }
+
+    public record Key(Long itemId, int index, int size, String format, long version) {
+    }
+
+    /** Буферът е read-only и споделен – за запис се ползва {@link #data()}. */
+    public record Entry(String mimeType, ByteBuffer buffer) {
+
+        public int length() {
+            return buffer.capacity();
+        }
+
+        /** Независима позиция за всяка заявка. */
+        public ByteBuffer data() {
+            return buffer.duplicate();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.webshop.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Optional;
+
+/**
+ * Кодиране с избрано качество през ImageIO. WebP идва от native плъгин (webp-imageio) –
+ * проверява се веднъж при първа употреба и ако библиотеката не се зареди
+ * (напр. musl/Alpine – затова Docker образът е на glibc), {@link #encodeWebp} просто връща празно.
+ */
+final class ImageCodecs {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageCodecs.class);
+
+    private static volatile Boolean webpAvailable;
+
+    private ImageCodecs() {
+    }
+
+    static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        return encode(flatten(image), "image/jpeg", "JPEG", quality);
+    }
+
+    /** Празно, ако WebP не е наличен в тази среда. */
+    static Optional<byte[]> encodeWebp(BufferedImage image, float quality) throws IOException {
+        if (!webpAvailable()) {
+            return Optional.empty();
+        }
+        return Optional.of(encode(image, "image/webp", "Lossy", quality));
+    }
+
+    static boolean webpAvailable() {
+        Boolean available = webpAvailable;
+        if (available == null) {
+            try {
+                // В Spring Boot jar плъгините от BOOT-INF/lib се виждат само с context class loader-а
+                ImageIO.scanForPlugins();
+                encode(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), "image/webp", "Lossy", 0.5f);
+                available = true;
+            } catch (IOException | RuntimeException | LinkageError e) {
+                logger.info("WebP encoding unavailable, keeping JPEG/PNG only: {}", e.toString());
+                available = false;
+            }
+            webpAvailable = available;
+        }
+        return available;
+    }
+
+    /** Без пиксели с прозрачност – тогава JPEG не губи нищо освен качество. */
+    static boolean isOpaque(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) {
+            return true;
+        }
+        int width = image.getWidth();
+        int[] row = new int[width];
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int argb : row) {
+                if ((argb >>> 24) != 0xFF) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static byte[] encode(BufferedImage image, String mimeType, String compressionType, float quality)
+            throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByMIMEType(mimeType);
+        if (!writers.hasNext()) {
+            throw new IOException("No ImageIO writer for " + mimeType);
+        }
+        ImageWriter writer = writers.next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionType(compressionType);
+            param.setCompressionQuality(quality);
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    /** JPEG няма алфа канал – прозрачното става бяло, както при вариантите. */
+    private static BufferedImage flatten(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, rgb.getWidth(), rgb.getHeight());
+            g.drawImage(image, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return rgb;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.webshop.services;
+
+import com.example.webshop.dto.ImageManifestDto;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.function.Supplier;
+
+/**
+ * Кеш на галериите (метаданни, без байтове) по обява. Всеки запис носи версията
+ * на обявата от {@link CatalogVersions} – построен преди промяна, се отхвърля при следващото четене.
+ * Над лимита Caffeine изхвърля най-малко използваните галерии.
+ */
+@Component
+public class ImageManifestCache {
+
+    private static final int MAX_ENTRIES = 10_000;
+
+    private final CatalogVersions catalogVersions;
+    private final Cache<Long, Entry> manifests = Caffeine.newBuilder().maximumSize(MAX_ENTRIES).build();
+
+    public ImageManifestCache(CatalogVersions catalogVersions) {
+        this.catalogVersions = catalogVersions;
+    }
+
+    public ImageManifestDto get(Long itemId, Supplier<ImageManifestDto> loader) {
+        long version = catalogVersions.itemVersion(itemId);
+        Entry entry = manifests.getIfPresent(itemId);
+        if (entry != null && entry.version == version) {
+            return entry.manifest;
+        }
+        ImageManifestDto manifest = loader.get();
+        manifests.put(itemId, new Entry(version, manifest));
+        return manifest;
+    }
+
+    /** Промяна без ItemChangedEvent (напр. размерите от фоновата обработка). */
+    public void evict(Long itemId) {
+        manifests.invalidate(itemId);
+    }
+
+    @Order(0)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onItemChanged(ItemChangedEvent event) {
+        manifests.invalidate(event.getItemId());
+    }
+
+    private record Entry(long version, ImageManifestDto manifest) {
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.webshop.services;
+
+import com.example.webshop.models.ItemImage;
+import com.example.webshop.repositories.ItemImageRepository;
+import com.example.webshop.repositories.ItemRepository;
+import com.example.webshop.validation.ImageValidation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фоново прекомпресиране на качените снимки, на партиди по id, в една нишка с нисък приоритет.
+ * За всяка снимка (веднъж – {@code item_image.optimized_at}):
+ * <ul>
+ *   <li>непрозрачен PNG или „тежък“ JPEG се прекодира в JPEG; новият заменя оригинала само ако е по-малък;</li>
+ *   <li>ако WebP е наличен – пълноразмерно WebP копие ({@link ImageVariantService#FULL_SIZE}),
+ *       само ако е по-малко от оригинала; /image/raw го връща на клиенти с {@code Accept: image/webp}.</li>
+ * </ul>
+ * GIF и снимките над {@link ImageValidation#DECODE_MAX_PIXELS} (декодират се subsampled) се пропускат.
+ * Спестените байтове – в лога и в метриката {@code image.recompress.saved.bytes}.
+ */
+@Service
+public class ImageRecompressionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageRecompressionService.class);
+
+    private static final int BATCH_SIZE = 20;
+    private static final long PAUSE_MS = 500;
+    private static final float JPEG_QUALITY = 0.85f;
+    private static final float WEBP_QUALITY = 0.80f;
+    /** JPEG над толкова байта на пиксел е записан с излишно високо качество. */
+    private static final double JPEG_MAX_BYTES_PER_PIXEL = 0.35;
+
+    private final boolean enabled;
+    private final long intervalMinutes;
+    private final ItemImageRepository itemImageRepository;
+    private final ItemRepository itemRepository;
+    private final ItemImageService itemImageService;
+    private final ImageVariantService imageVariantService;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher events;
+    private final Counter processed;
+    private final Counter savedOriginal;
+    private final Counter savedWebp;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "image-recompress");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    public ImageRecompressionService(@Value("${app.images.recompress.enabled:true}") boolean enabled,
+                                     @Value("${app.images.recompress.interval-minutes:15}") long intervalMinutes,
+                                     ItemImageRepository itemImageRepository,
+                                     ItemRepository itemRepository,
+                                     ItemImageService itemImageService,
+                                     ImageVariantService imageVariantService,
+                                     JdbcTemplate jdbc,
+                                     TransactionTemplate transactionTemplate,
+                                     ApplicationEventPublisher events,
+                                     MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.intervalMinutes = intervalMinutes;
+        this.itemImageRepository = itemImageRepository;
+        this.itemRepository = itemRepository;
+        this.itemImageService = itemImageService;
+        this.imageVariantService = imageVariantService;
+        this.jdbc = jdbc;
+        this.transactionTemplate = transactionTemplate;
+        this.events = events;
+        this.processed = meterRegistry.counter("image.recompress.processed");
+        this.savedOriginal = Counter.builder("image.recompress.saved.bytes").tag("kind", "original")
+                .baseUnit("bytes").register(meterRegistry);
+        this.savedWebp = Counter.builder("image.recompress.saved.bytes").tag("kind", "webp")
+                .baseUnit("bytes").register(meterRegistry);
+    }
+
+    /** Първо обхождане след старта, после периодично – за новите качвания. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            executor.scheduleWithFixedDelay(this::sweep, 0, intervalMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    void sweep() {
+        long afterId = 0;
+        Totals totals = new Totals();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Long> ids = jdbc.queryForList(
+                        "SELECT id FROM item_image WHERE id > ? AND optimized_at IS NULL ORDER BY id LIMIT ?",
+                        Long.class, afterId, BATCH_SIZE);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                for (Long id : ids) {
+                    optimize(id, totals);
+                }
+                afterId = ids.get(ids.size() - 1);
+                Thread.sleep(PAUSE_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.warn("Image recompression stopped: {}", e.getMessage());
+        }
+        if (totals.images > 0) {
+            logger.info("Image recompression: {} image(s), {} original(s) replaced (-{} bytes), "
+                            + "{} WebP cop(ies) (-{} bytes per full download)",
+                    totals.images, totals.replaced, totals.originalBytesSaved, totals.webp, totals.webpBytesSaved);
+        }
+    }
+
+    private void optimize(Long imageId, Totals totals) {
+        Optional<ItemImage> found = itemImageRepository.findById(imageId);
+        if (found.isEmpty()) {
+            return;
+        }
+        ItemImage image = found.get();
+        try {
+            optimize(image, totals);
+        } catch (IOException | RuntimeException | LinkageError e) {
+            logger.warn("Cannot recompress image {}: {}", imageId, e.getMessage());
+        }
+        jdbc.update("UPDATE item_image SET optimized_at = ? WHERE id = ?", Timestamp.valueOf(LocalDateTime.now()), imageId);
+        totals.images++;
+        processed.increment();
+    }
+
+    private void optimize(ItemImage image, Totals totals) throws IOException {
+        if ("image/gif".equals(image.getMimeType())) {
+            return;
+        }
+        Optional<byte[]> original = itemImageService.readBytes(image);
+        if (original.isEmpty()) {
+            return;
+        }
+        ImageValidation.Decoded decoded = ImageValidation.decode(original.get(), 0);
+        // Над DECODE_MAX_PIXELS (напр. обикновена 12 MP снимка от телефон) растерът е subsampled –
+        // от него не се пише нито нов оригинал, нито пълноразмерно копие: биха били с по-ниска резолюция
+        if (decoded == null || decoded.subsampled()) {
+            return;
+        }
+        BufferedImage source = decoded.image();
+        long currentSize = original.get().length;
+
+        // Кодирането е извън транзакцията – тя само записва резултата
+        byte[] jpeg = null;
+        if (worthJpeg(image.getMimeType(), decoded, currentSize)) {
+            byte[] encoded = ImageCodecs.encodeJpeg(source, JPEG_QUALITY);
+            if (encoded.length < currentSize) {
+                jpeg = encoded;
+            }
+        }
+        byte[] webp = null;
+        if (!imageVariantService.hasFullSize(image.getId())) {
+            long limit = jpeg != null ? jpeg.length : currentSize;
+            webp = ImageCodecs.encodeWebp(source, WEBP_QUALITY).filter(b -> b.length < limit).orElse(null);
+        }
+        if (jpeg == null && webp == null) {
+            return;
+        }
+
+        byte[] newOriginal = jpeg;
+        byte[] webpCopy = webp;
+        transactionTemplate.executeWithoutResult(status -> {
+            boolean any = false;
+            if (newOriginal != null
+                    && itemImageService.replaceContent(image.getId(), image.getChecksum(), newOriginal, "image/jpeg",
+                    source.getWidth(), source.getHeight())) {
+                totals.replaced++;
+                totals.originalBytesSaved += currentSize - newOriginal.length;
+                savedOriginal.increment(currentSize - newOriginal.length);
+                any = true;
+            }
+            try {
+                if (webpCopy != null && imageVariantService.saveFullSize(image.getId(), "image/webp", webpCopy)) {
+                    long base = newOriginal != null ? newOriginal.length : currentSize;
+                    totals.webp++;
+                    totals.webpBytesSaved += base - webpCopy.length;
+                    savedWebp.increment(base - webpCopy.length);
+                    any = true;
+                }
+            } catch (IOException e) {
+                logger.warn("Cannot store WebP copy of image {}: {}", image.getId(), e.getMessage());
+            }
+            if (any) {
+                // Нови байтове / нов вариант – кешовете на снимките и ETag-ът на обявата се обновяват след commit
+                itemRepository.findById(image.getItemId()).ifPresent(item -> events.publishEvent(ItemChangedEvent.saved(item)));
+            }
+        });
+    }
+
+    /** Непрозрачен PNG (напр. screenshot) или JPEG с излишно високо качество. */
+    private static boolean worthJpeg(String mimeType, ImageValidation.Decoded decoded, long size) {
+        if ("image/png".equals(mimeType)) {
+            return ImageCodecs.isOpaque(decoded.image());
+        }
+        return "image/jpeg".equals(mimeType)
+                && size > (double) decoded.width() * decoded.height() * JPEG_MAX_BYTES_PER_PIXEL;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static final class Totals {
+        int images;
+        int replaced;
+        int webp;
+        long originalBytesSaved;
+        long webpBytesSaved;
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.webshop.services;
+
+import com.example.webshop.models.ItemImage;
+import com.example.webshop.models.ItemImageVariant;
+import com.example.webshop.repositories.ItemImageRepository;
+import com.example.webshop.repositories.ItemImageVariantRepository;
+import com.example.webshop.storage.BlobStores;
+import com.example.webshop.validation.ImageValidation;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Умалени варианти (160/480/1080 px ширина) на снимките от {@code item_image}
+ * и техните размери в пиксели (за галерията).
+ * Генерират се веднъж, след commit на качването, в ограничен пул от нишки;
+ * до тогава (и при препълнена опашка) {@code ?size=} връща оригинала.
+ * Приключилите снимки се отбелязват в {@code item_image.variants_at} – и след рестарт
+ * не се декодират отново.
+ */
+@Service
+public class ImageVariantService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageVariantService.class);
+
+    /** Стандартните ширини – заявеният размер се закръгля нагоре до най-близката. */
+    public static final int[] WIDTHS = {160, 480, 1080};
+
+    /** Ширина 0 – пълен размер в друг формат (WebP), пише се от {@link ImageRecompressionService}. */
+    public static final int FULL_SIZE = 0;
+
+    private static final int WORKERS = 2;
+    private static final int QUEUE_CAPACITY = 64;
+    /** След временна грешка (липсващи байтове, декодер) снимката се опитва пак след толкова. */
+    private static final Duration RETRY_AFTER_FAILURE = Duration.ofMinutes(10);
+
+    private final ItemImageRepository itemImageRepository;
+    private final ItemImageVariantRepository variantRepository;
+    private final ImageManifestCache manifestCache;
+    private final BlobStores blobStores;
+    private final ThreadPoolExecutor executor;
+    /** Снимките, за които вече има задача в опашката – без дублиране при много заявки. */
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+    /** Неуспелите наскоро – не се декодират отново при всяка заявка. */
+    private final Cache<Long, Boolean> failed = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(RETRY_AFTER_FAILURE)
+            .build();
+
+    public ImageVariantService(ItemImageRepository itemImageRepository,
+                               ItemImageVariantRepository variantRepository,
+                               ImageManifestCache manifestCache,
+                               BlobStores blobStores) {
+        this.itemImageRepository = itemImageRepository;
+        this.variantRepository = variantRepository;
+        this.manifestCache = manifestCache;
+        this.blobStores = blobStores;
+        AtomicInteger threadNo = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(WORKERS, WORKERS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(r, "image-variants-" + threadNo.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Варианта с най-малката стандартна ширина ≥ {@code size}. Празно, ако оригиналът
+     * е по-малък или вариантът още не е готов (тогава се насрочва генериране).
+     */
+    public Optional<ItemImageVariant> find(ItemImage image, int size) {
+        int width = standardWidth(size);
+        if (width < 0) {
+            return Optional.empty();
+        }
+        Optional<ItemImageVariant> variant = variantRepository.findByImageIdAndWidth(image.getId(), width);
+        if (variant.isEmpty() && !isProcessed(image) && failed.getIfPresent(image.getId()) == null) {
+            // Стари снимки (отпреди вариантите) или изпусната задача – генерираме при първа заявка
+            schedule(image.getId());
+        }
+        return variant;
+    }
+
+    /** Вариантите са генерирани (или не са нужни) – липсващ вариант значи, че се ползва оригиналът. */
+    public boolean isProcessed(ItemImage image) {
+        return image.getVariantsAt() != null;
+    }
+
+    /** Насрочва генериране след commit на текущата транзакция (или веднага, ако няма такава). */
+    public void schedule(Long imageId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(imageId);
+                }
+            });
+        } else {
+            submit(imageId);
+        }
+    }
+
+    private void submit(Long imageId) {
+        if (!pending.add(imageId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    if (generate(imageId)) {
+                        itemImageRepository.markVariantsDone(imageId, LocalDateTime.now());
+                    } else {
+                        failed.put(imageId, Boolean.TRUE);
+                    }
+                } finally {
+                    pending.remove(imageId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(imageId);
+            logger.warn("Image variant queue full, skipping image {}", imageId);
+        }
+    }
+
+    /** true – готово (или не е нужно); false – временна грешка, опитва се пак по-късно. */
+    private boolean generate(Long imageId) {
+        Optional<ItemImage> found = itemImageRepository.findById(imageId);
+        if (found.isEmpty()) {
+            return true;
+        }
+        ItemImage image = found.get();
+        ImageValidation.Decoded decoded;
+        try {
+            Optional<byte[]> bytes = blobStores.read(image.getStorage(), image.getStorageKey(), image.getData());
+            if (bytes.isEmpty()) {
+                logger.warn("Image {} has no bytes in {}", imageId, image.getStorage());
+                return false;
+            }
+            // Subsampling до ~2× най-голямата ширина – паметта не зависи от размера на оригинала
+            decoded = ImageValidation.decode(bytes.get(), WIDTHS[WIDTHS.length - 1]);
+        } catch (IOException | RuntimeException | LinkageError e) {
+            // LinkageError – native WebP декодерът не е зареден в тази среда
+            logger.warn("Cannot decode image {}: {}", imageId, e.getMessage());
+            return false;
+        }
+        if (decoded == null) {
+            return true; // форматът не се поддържа от ImageIO
+        }
+        BufferedImage source = decoded.image();
+        if (image.getWidth() == null) {
+            itemImageRepository.updateDimensions(imageId, decoded.width(), decoded.height());
+            manifestCache.evict(image.getItemId());
+        }
+        boolean png = !"image/jpeg".equals(image.getMimeType());
+        for (int width : WIDTHS) {
+            if (width >= decoded.width()) {
+                break; // не уголемяваме – за по-големи размери се връща оригиналът
+            }
+            if (variantRepository.findByImageIdAndWidth(imageId, width).isPresent()) {
+                continue;
+            }
+            try {
+                byte[] bytes = encode(scaleToWidth(source, width, png), png);
+                String mime = png ? "image/png" : "image/jpeg";
+                String key = "variants/" + imageId + "/" + width;
+                String storage = blobStores.put(key, new ByteArrayInputStream(bytes), bytes.length, mime);
+                variantRepository.saveAndFlush(new ItemImageVariant(imageId, width, mime, bytes.length, storage, key));
+            } catch (IOException e) {
+                logger.warn("Failed to encode {}px variant of image {}: {}", width, imageId, e.getMessage());
+            } catch (DataIntegrityViolationException e) {
+                // друг възел вече го е записал
+            }
+        }
+        return true;
+    }
+
+    /** Пълноразмерното копие във формат {@code mimeType}, ако е генерирано. */
+    public Optional<ItemImageVariant> findFullSize(ItemImage image, String mimeType) {
+        return variantRepository.findByImageIdAndWidth(image.getId(), FULL_SIZE)
+                .filter(v -> mimeType.equals(v.getMimeType()));
+    }
+
+    public boolean hasFullSize(Long imageId) {
+        return variantRepository.findByImageIdAndWidth(imageId, FULL_SIZE).isPresent();
+    }
+
+    /** Записва пълноразмерно копие в друг формат; false, ако вече има такова. */
+    public boolean saveFullSize(Long imageId, String mimeType, byte[] bytes) throws IOException {
+        if (hasFullSize(imageId)) {
+            return false;
+        }
+        // Случаен суфикс – при състезание между възли rollback-ът не трие чуждия blob
+        String key = "variants/" + imageId + "/full-" + UUID.randomUUID();
+        String storage = blobStores.put(key, new ByteArrayInputStream(bytes), bytes.length, mimeType);
+        try {
+            // flush веднага – дублиращият (image_id, width) трябва да се хване тук, а не при commit
+            variantRepository.saveAndFlush(new ItemImageVariant(imageId, FULL_SIZE, mimeType, bytes.length, storage, key));
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            return false;
+        }
+    }
+
+    /** Байтовете на варианта – от хранилището му (или от старата bytea колона). */
+    public Optional<byte[]> readBytes(ItemImageVariant variant) {
+        return blobStores.read(variant.getStorage(), variant.getStorageKey(), variant.getData());
+    }
+
+    /** Файлът на варианта, ако е в {@code fs} – за поточно отдаване. */
+    public Optional<Path> file(ItemImageVariant variant) {
+        return blobStores.file(variant.getStorage(), variant.getStorageKey());
+    }
+
+    /** Най-малката стандартна ширина ≥ size; -1 ако size е по-голям от всички. */
+    public static int standardWidth(int size) {
+        for (int width : WIDTHS) {
+            if (size <= width) {
+                return width;
+            }
+        }
+        return -1;
+    }
+
+    /** Умаляване на стъпки по 1/2 (билинейно) – по-малко „назъбване“ от едно голямо умаляване. */
+    private static BufferedImage scaleToWidth(BufferedImage source, int width, boolean keepAlpha) {
+        int type = keepAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        int targetHeight = Math.max(1, (int) Math.round((double) source.getHeight() * width / source.getWidth()));
+        BufferedImage current = source;
+        int w = source.getWidth();
+        int h = source.getHeight();
+        do {
+            w = Math.max(width, w / 2);
+            h = Math.max(targetHeight, h / 2);
+            BufferedImage next = new BufferedImage(w, h, type);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                if (!keepAlpha) {
+                    g.setColor(Color.WHITE);
+                    g.fillRect(0, 0, w, h);
+                }
+                g.drawImage(current, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (w > width);
+        return current;
+    }
+
+    private static byte[] encode(BufferedImage image, boolean png) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, png ? "png" : "jpeg", out)) {
+            throw new IOException("No ImageIO writer");
+        }
+        return out.toByteArray();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.webshop.services;
+
+import com.example.webshop.dto.ItemListDto;
+import com.example.webshop.models.Item;
+
+/**
+ * Публикува се от {@link ItemService} при всяка промяна на обява. Слушателите
+ * (кеш на каталога и т.н.) го получават след commit на транзакцията.
+ * {@code item} е null, когато обявата е изтрита.
+ */
+public final class ItemChangedEvent {
+
+    private final Long itemId;
+    private final ItemListDto item;
+
+    private ItemChangedEvent(Long itemId, ItemListDto item) {
+        this.itemId = itemId;
+        this.item = item;
+    }
+
+    public static ItemChangedEvent saved(Item item) {
+        return new ItemChangedEvent(item.getId(), ItemListDto.from(item));
+    }
+
+    /** За редове, записани без entity (напр. batch импорт). */
+    public static ItemChangedEvent saved(ItemListDto item) {
+        return new ItemChangedEvent(item.getId(), item);
+    }
+
+    public static ItemChangedEvent deleted(Long itemId) {
+        return new ItemChangedEvent(itemId, null);
+    }
+
+    public Long getItemId() {
+        return itemId;
+    }
+
+    /** Новото състояние за списъци; null при изтриване. */
+    public ItemListDto getItem() {
+        return item;
+    }
+
+    public boolean isDeleted() {
+        return item == null;
+    }
+}
@@ -0,0 +1,409 @@
+package com.example.webshop.services;
+
+import com.example.webshop.config.UploadStorage;
+import com.example.webshop.dto.ImageManifestDto;
+import com.example.webshop.exception.ApiException;
+import com.example.webshop.models.Item;
+import com.example.webshop.models.ItemImage;
+import com.example.webshop.repositories.ItemImageRepository;
+import com.example.webshop.repositories.ItemImageVariantRepository;
+import com.example.webshop.repositories.ItemRepository;
+import com.example.webshop.storage.BlobStore;
+import com.example.webshop.storage.BlobStores;
+import com.example.webshop.validation.ImageValidation;
+import jakarta.annotation.PreDestroy;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Снимките на обявите в таблица {@code item_image} (метаданни), байтовете – в {@link BlobStore},
+ * по веднъж за всяко съдържание ({@link ImageBlobService}).
+ * Индексът в галерията обхваща първо тези редове, после останалите (http/fs) токени
+ * в {@code item.image_url}.
+ */
+@Service
+public class ItemImageService {
+
+    public static final long MAX_IMAGE_BYTES = 3L * 1024 * 1024;
+    public static final int MAX_IMAGES_PER_REQUEST = 10;
+
+    private static final int PREPARE_WORKERS = 4;
+
+    private final ItemImageRepository itemImageRepository;
+    private final ItemImageVariantRepository variantRepository;
+    private final ImageVariantService imageVariantService;
+    private final ItemRepository itemRepository;
+    private final ImageManifestCache manifestCache;
+    private final ImageBlobService imageBlobService;
+    private final BlobStores blobStores;
+    private final JdbcTemplate jdbc;
+    private final ThreadPoolExecutor prepareExecutor;
+
+    public ItemImageService(ItemImageRepository itemImageRepository,
+                            ItemImageVariantRepository variantRepository,
+                            ImageVariantService imageVariantService,
+                            ItemRepository itemRepository,
+                            ImageManifestCache manifestCache,
+                            ImageBlobService imageBlobService,
+                            BlobStores blobStores,
+                            JdbcTemplate jdbc) {
+        this.itemImageRepository = itemImageRepository;
+        this.variantRepository = variantRepository;
+        this.imageVariantService = imageVariantService;
+        this.itemRepository = itemRepository;
+        this.manifestCache = manifestCache;
+        this.imageBlobService = imageBlobService;
+        this.blobStores = blobStores;
+        this.jdbc = jdbc;
+        AtomicInteger threadNo = new AtomicInteger();
+        // Пълна опашка – задачата се изпълнява в нишката на заявката (естествен backpressure)
+        this.prepareExecutor = new ThreadPoolExecutor(PREPARE_WORKERS, PREPARE_WORKERS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(32), r -> {
+                    Thread t = new Thread(r, "image-prepare-" + threadNo.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /** Качен файл, преди проверка: източник на байтовете, деклариран размер и Content-Type. */
+    public record Upload(InputStreamSource source, long length, String declaredType) {
+    }
+
+    /**
+     * Проверена снимка, готова за запис – MIME по съдържанието, SHA-256 и дължина на байтовете
+     * без метаданни ({@code source} ги маха при всяко четене), размери от хедъра (null, ако са непознати).
+     */
+    public record PreparedImage(InputStreamSource source, long length, String mimeType, String checksum,
+                                Integer width, Integer height) {
+    }
+
+    /**
+     * Проверява и хешира снимките паралелно (ограничен пул) – едно четене на файл,
+     * без байтовете в паметта. Първата невалидна снимка прекратява всичко с 400/413.
+     */
+    public List<PreparedImage> prepareAll(List<Upload> uploads) {
+        List<CompletableFuture<PreparedImage>> futures = uploads.stream()
+                .map(u -> CompletableFuture.supplyAsync(() -> prepare(u), prepareExecutor))
+                .toList();
+        List<PreparedImage> prepared = new ArrayList<>(futures.size());
+        for (CompletableFuture<PreparedImage> f : futures) {
+            try {
+                prepared.add(f.join());
+            } catch (CompletionException e) {
+                futures.forEach(other -> other.cancel(true));
+                if (e.getCause() instanceof ApiException api) {
+                    throw api;
+                }
+                throw new ApiException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to read image: " + e.getCause().getMessage());
+            }
+        }
+        return prepared;
+    }
+
+    private static PreparedImage prepare(Upload upload) {
+        if (upload.length() > MAX_IMAGE_BYTES) {
+            throw new ApiException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "Image is too large. Maximum size is 3MB. Please compress or resize your image.");
+        }
+        if (upload.declaredType() == null || !upload.declaredType().startsWith("image/")) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "File must be an image");
+        }
+        try {
+            // Първо само хедърът: формат по magic bytes и размери, без да се декодират пикселите
+            String mime;
+            ImageValidation.Dimensions dimensions;
+            try (InputStream head = new BufferedInputStream(upload.source().getInputStream())) {
+                mime = sniffMimeType(head);
+                if (mime == null) {
+                    throw new ApiException(HttpStatus.BAD_REQUEST, "Unsupported image format");
+                }
+                dimensions = ImageValidation.readDimensions(head, mime);
+            }
+            ImageValidation.requireWithinBudget(dimensions);
+
+            InputStreamSource stripped = () -> ImageValidation.stripMetadata(upload.source().getInputStream(), mime);
+            MessageDigest sha256 = newSha256();
+            long total = 0;
+            try (InputStream in = stripped.getInputStream()) {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    sha256.update(buffer, 0, n);
+                    total += n;
+                }
+            }
+            if (total > MAX_IMAGE_BYTES) {
+                throw new ApiException(HttpStatus.PAYLOAD_TOO_LARGE,
+                        "Image is too large. Maximum size is 3MB. Please compress or resize your image.");
+            }
+            return new PreparedImage(stripped, total, mime, HexFormat.of().formatHex(sha256.digest()),
+                    dimensions.width(), dimensions.height());
+        } catch (IOException e) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "Cannot read image: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Всички подготвени снимки в края на галерията: съдържанието през {@link ImageBlobService}
+     * (качва се само ако такъв SHA-256 още няма), после редовете с един batch INSERT.
+     */
+    @Transactional
+    public void insertAll(Long itemId, List<PreparedImage> images) {
+        if (images.isEmpty()) {
+            return;
+        }
+        int firstOrdinal = itemImageRepository.findMaxOrdinal(itemId) + 1;
+        List<ImageBlobService.BlobRef> blobs = new ArrayList<>(images.size());
+        for (PreparedImage image : images) {
+            blobs.add(imageBlobService.acquire(image.checksum(), image.mimeType(), image.length(), image.source()));
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbc.batchUpdate("INSERT INTO item_image (item_id, ordinal, mime_type, size_bytes, checksum, storage, storage_key, "
+                + "width, height, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                PreparedImage image = images.get(i);
+                ps.setLong(1, itemId);
+                ps.setInt(2, firstOrdinal + i);
+                ps.setString(3, image.mimeType());
+                ps.setLong(4, image.length());
+                ps.setString(5, image.checksum());
+                ps.setString(6, blobs.get(i).storage());
+                ps.setString(7, blobs.get(i).storageKey());
+                ps.setObject(8, image.width(), Types.INTEGER);
+                ps.setObject(9, image.height(), Types.INTEGER);
+                ps.setTimestamp(10, now);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return images.size();
+            }
+        });
+        jdbc.queryForList("SELECT id FROM item_image WHERE item_id = ? AND ordinal >= ?", Long.class, itemId, firstOrdinal)
+                .forEach(imageVariantService::schedule);
+    }
+
+    /** Байтовете на снимката – от хранилището ѝ (или от старата bytea колона). */
+    public Optional<byte[]> readBytes(ItemImage image) {
+        return blobStores.read(image.getStorage(), image.getStorageKey(), image.getData());
+    }
+
+    /** Файлът на снимката, ако е в {@code fs} – за поточно отдаване. */
+    public Optional<Path> file(ItemImage image) {
+        return blobStores.file(image.getStorage(), image.getStorageKey());
+    }
+
+    /**
+     * Подменя байтовете на снимката (напр. след прекомпресиране), ако от {@code expectedChecksum}
+     * насам не е променяна или изтрита. Старото съдържание губи препратка / се трие след commit.
+     */
+    @Transactional
+    public boolean replaceContent(Long imageId, String expectedChecksum, byte[] bytes, String mimeType,
+                                  int width, int height) {
+        List<Map<String, Object>> rows = jdbc.queryForList(
+                "SELECT checksum, storage, storage_key FROM item_image WHERE id = ? FOR UPDATE", imageId);
+        if (rows.isEmpty() || !Objects.equals(expectedChecksum, rows.get(0).get("checksum"))) {
+            return false;
+        }
+        String oldStorage = (String) rows.get(0).get("storage");
+        String oldKey = (String) rows.get(0).get("storage_key");
+        String checksum = sha256Hex(bytes);
+        ImageBlobService.BlobRef blob = imageBlobService.acquire(checksum, mimeType, bytes.length, new ByteArrayResource(bytes));
+        jdbc.update("UPDATE item_image SET mime_type = ?, size_bytes = ?, checksum = ?, storage = ?, storage_key = ?, "
+                        + "width = ?, height = ?, data = NULL WHERE id = ?",
+                mimeType, bytes.length, checksum, blob.storage(), blob.storageKey(), width, height, imageId);
+        if (ImageBlobService.isShared(oldKey)) {
+            imageBlobService.release(expectedChecksum);
+        } else if (oldKey != null) {
+            blobStores.deleteAfterCommit(oldStorage, oldKey);
+        }
+        return true;
+    }
+
+    /**
+     * MIME типът по първите байтове (magic number), а не по хедъра на клиента.
+     * Потокът трябва да поддържа mark/reset; позицията се връща в началото. null – непознат формат.
+     */
+    public static String sniffMimeType(InputStream in) throws IOException {
+        byte[] head = new byte[12];
+        in.mark(head.length);
+        int n = in.readNBytes(head, 0, head.length);
+        in.reset();
+        if (n >= 3 && (head[0] & 0xFF) == 0xFF && (head[1] & 0xFF) == 0xD8 && (head[2] & 0xFF) == 0xFF) {
+            return "image/jpeg";
+        }
+        if (n >= 8 && (head[0] & 0xFF) == 0x89 && head[1] == 'P' && head[2] == 'N' && head[3] == 'G') {
+            return "image/png";
+        }
+        if (n >= 6 && head[0] == 'G' && head[1] == 'I' && head[2] == 'F' && head[3] == '8') {
+            return "image/gif";
+        }
+        if (n >= 12 && head[0] == 'R' && head[1] == 'I' && head[2] == 'F' && head[3] == 'F'
+                && head[8] == 'W' && head[9] == 'E' && head[10] == 'B' && head[11] == 'P') {
+            return "image/webp";
+        }
+        return null;
+    }
+
+    /**
+     * Редовете веднага, собствените blob-ове (варианти, стари снимки) – след commit.
+     * Споделеното съдържание само губи препратка и се трие, ако друга обява не го ползва.
+     */
+    @Transactional
+    public void deleteForItem(Long itemId) {
+        List<String> released = new ArrayList<>();
+        jdbc.query("SELECT v.storage, v.storage_key, NULL FROM item_image_variant v "
+                        + "JOIN item_image i ON i.id = v.image_id WHERE i.item_id = ? "
+                        + "UNION ALL SELECT storage, storage_key, checksum FROM item_image WHERE item_id = ?",
+                rs -> {
+                    if (ImageBlobService.isShared(rs.getString(2))) {
+                        released.add(rs.getString(3));
+                    } else {
+                        blobStores.deleteAfterCommit(rs.getString(1), rs.getString(2));
+                    }
+                }, itemId, itemId);
+        released.forEach(imageBlobService::release);
+        variantRepository.deleteByItemId(itemId);
+        itemImageRepository.deleteByItemId(itemId);
+    }
+
+    public Optional<ItemImage> findStored(Long itemId, int index) {
+        return itemImageRepository.findByItemIdAndOrdinal(itemId, index);
+    }
+
+    public long countStored(Long itemId) {
+        return itemImageRepository.countByItemId(itemId);
+    }
+
+    /**
+     * Галерията на обявата без байтовете – от {@link ImageManifestCache} или с две малки
+     * заявки: метаданните от item_image (без data) и само колоната image_url.
+     */
+    public ImageManifestDto manifest(Long itemId) {
+        return manifestCache.get(itemId, () -> loadManifest(itemId));
+    }
+
+    private ImageManifestDto loadManifest(Long itemId) {
+        String imageUrl = itemRepository.findImageUrlById(itemId)
+                .orElseThrow(() -> new ApiException(HttpStatus.NOT_FOUND, "Item not found"));
+        List<ImageManifestDto.Image> images = new ArrayList<>(itemImageRepository.findManifest(itemId));
+        if (images.stream().anyMatch(i -> i.width() == null)) {
+            // Размерите на стари снимки се попълват от фоновата обработка
+            itemImageRepository.findIdsWithoutDimensions(itemId).forEach(imageVariantService::schedule);
+        }
+        int index = images.size();
+        for (String part : imageUrl.split(Pattern.quote(UploadStorage.IMAGE_PART_DELIMITER))) {
+            String p = part.trim();
+            if (p.isEmpty()) {
+                continue;
+            }
+            String url = p.startsWith("http://") || p.startsWith("https://")
+                    ? p
+                    : "/items/" + itemId + "/image/raw?index=" + index;
+            images.add(new ImageManifestDto.Image(index++, null, null, null, null, null, url));
+        }
+        return new ImageManifestDto(images.size(), List.copyOf(images));
+    }
+
+    /**
+     * Премества base64 {@code data:} токените от {@code item.image_url} в {@code item_image},
+     * в същия ред; http/fs токените остават в колоната. Връща true, ако обявата е променена.
+     */
+    @Transactional
+    public boolean drainInlineImages(Item item) {
+        String raw = item.getImageUrl();
+        if (raw == null || !raw.contains("data:")) {
+            return false;
+        }
+        List<String> remaining = new ArrayList<>();
+        // Поредните номера се броят локално – при flush_mode=commit заявката за MAX не вижда незаписаните редове
+        int ordinal = itemImageRepository.findMaxOrdinal(item.getId()) + 1;
+        for (String part : raw.split(Pattern.quote(UploadStorage.IMAGE_PART_DELIMITER))) {
+            String p = part.trim();
+            if (p.isEmpty()) {
+                continue;
+            }
+            if (!p.startsWith("data:")) {
+                remaining.add(p);
+                continue;
+            }
+            int comma = p.indexOf(',');
+            if (comma < 0) {
+                continue;
+            }
+            int semicolon = p.indexOf(';');
+            String mime = semicolon > 5 && semicolon < comma ? p.substring(5, semicolon) : "image/jpeg";
+            try {
+                // MIME декодерът пропуска whitespace – без replaceAll върху целия низ
+                byte[] bytes = Base64.getMimeDecoder().decode(p.substring(comma + 1));
+                if (bytes.length > 0) {
+                    save(item.getId(), ordinal++, mime, bytes);
+                }
+            } catch (IllegalArgumentException e) {
+                // повреден base64 – изпускаме токена
+            }
+        }
+        // С sequence id-та INSERT-ите чакат flush – insertAll след това чете MAX(ordinal) с JDBC
+        itemImageRepository.flush();
+        item.setImageUrl(remaining.isEmpty() ? null : String.join(UploadStorage.IMAGE_PART_DELIMITER, remaining));
+        return true;
+    }
+
+    private ItemImage save(Long itemId, int ordinal, String mimeType, byte[] bytes) {
+        String checksum = sha256Hex(bytes);
+        ImageBlobService.BlobRef blob = imageBlobService.acquire(checksum, mimeType, bytes.length, new ByteArrayResource(bytes));
+        ItemImage saved = itemImageRepository.save(
+                new ItemImage(itemId, ordinal, mimeType, checksum, bytes.length, blob.storage(), blob.storageKey()));
+        imageVariantService.schedule(saved.getId());
+        return saved;
+    }
+
+    public static String sha256Hex(byte[] bytes) {
+        return HexFormat.of().formatHex(newSha256().digest(bytes));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        prepareExecutor.shutdownNow();
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
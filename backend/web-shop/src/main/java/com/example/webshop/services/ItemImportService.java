@@ -0,0 +1,183 @@
+package com.example.webshop.services;
+
+import com.example.webshop.exception.ApiException;
+import com.example.webshop.models.Item;
+import com.example.webshop.validation.ItemValidation;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Масов импорт на обяви от CSV (с ред заглавия – имената на полетата) или NDJSON (по един JSON обект на ред).
+ * Входът се чете поточно, ред по ред; всеки ред минава правилата на POST /items, а валидните
+ * се записват на партиди по {@value #BATCH_SIZE} с {@link ItemService#insertBatch} – всяка партида
+ * в своя транзакция. Грешките по редове и прогресът след всяка партида се подават на {@code listener}.
+ */
+@Service
+public class ItemImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ItemImportService.class);
+
+    public static final int BATCH_SIZE = 200;
+    public static final int MAX_ROWS = 10_000;
+
+    private final ItemService itemService;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader csvReader;
+
+    public ItemImportService(ItemService itemService, ObjectMapper objectMapper) {
+        this.itemService = itemService;
+        this.objectMapper = objectMapper;
+        // Всички колони като низове – типовете се проверяват при преобразуването към Item, по ред
+        this.csvReader = new CsvMapper()
+                .enable(CsvParser.Feature.TRIM_SPACES)
+                .enable(CsvParser.Feature.SKIP_EMPTY_LINES)
+                .readerFor(Map.class)
+                .with(CsvSchema.emptySchema().withHeader());
+    }
+
+    public enum Format { CSV, NDJSON }
+
+    /** Събитие към клиента – един ред от NDJSON отговора. */
+    public sealed interface ImportEvent permits RowError, Progress {
+    }
+
+    /** {@code row} е номерът на реда с данни (1 = първият след заглавията при CSV). */
+    public record RowError(long row, String error) implements ImportEvent {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Progress(long processed, long imported, long failed, boolean done, String error)
+            implements ImportEvent {
+    }
+
+    public Progress importItems(InputStream in, Format format, Consumer<ImportEvent> listener) {
+        Importer importer = new Importer(listener);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            if (format == Format.CSV) {
+                readCsv(reader, importer);
+            } else {
+                readNdjson(reader, importer);
+            }
+            importer.flush();
+            return importer.finish(null);
+        } catch (IOException | RuntimeException e) {
+            // Структурна грешка във файла (незатворени кавички и т.н.) – спираме, записаното остава
+            logger.warn("Item import stopped after {} row(s): {}", importer.processed, e.getMessage());
+            importer.flush();
+            return importer.finish("Import stopped at row " + (importer.processed + 1) + ": " + e.getMessage());
+        }
+    }
+
+    private void readCsv(Reader reader, Importer importer) throws IOException {
+        try (MappingIterator<Map<String, String>> rows = csvReader.readValues(reader)) {
+            while (rows.hasNextValue() && importer.hasCapacity()) {
+                Map<String, String> row = rows.nextValue();
+                importer.accept(() -> objectMapper.convertValue(row, Item.class));
+            }
+        }
+    }
+
+    private void readNdjson(BufferedReader reader, Importer importer) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null && importer.hasCapacity()) {
+            if (line.isBlank()) {
+                continue;
+            }
+            String json = line;
+            importer.accept(() -> objectMapper.readValue(json, Item.class));
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowParser {
+        Item parse() throws IOException;
+    }
+
+    /** Брои редовете и трупа валидните в партида. */
+    private final class Importer {
+
+        private final Consumer<ImportEvent> listener;
+        private final List<Item> batch = new ArrayList<>(BATCH_SIZE);
+        private final List<Long> batchRows = new ArrayList<>(BATCH_SIZE);
+        private long processed;
+        private long imported;
+        private long failed;
+
+        Importer(Consumer<ImportEvent> listener) {
+            this.listener = listener;
+        }
+
+        boolean hasCapacity() {
+            if (processed < MAX_ROWS) {
+                return true;
+            }
+            listener.accept(new RowError(processed + 1, "Too many rows – at most " + MAX_ROWS + " per import"));
+            return false;
+        }
+
+        void accept(RowParser parser) {
+            long row = ++processed;
+            try {
+                Item item = parser.parse();
+                ItemValidation.requireValidNew(item);
+                itemService.validateContacts(item);
+                batch.add(item);
+                batchRows.add(row);
+            } catch (ApiException e) {
+                fail(row, e.getMessage());
+            } catch (IOException | IllegalArgumentException e) {
+                fail(row, "Invalid row: " + e.getMessage());
+            }
+            if (batch.size() >= BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                imported += itemService.insertBatch(batch).size();
+            } catch (DataAccessException e) {
+                // Партидата е върната изцяло – всеки неин ред е неуспешен
+                logger.warn("Item import batch failed: {}", e.getMessage());
+                batchRows.forEach(row -> fail(row, "Database error: " + e.getMostSpecificCause().getMessage()));
+            }
+            batch.clear();
+            batchRows.clear();
+            listener.accept(new Progress(processed, imported, failed, false, null));
+        }
+
+        Progress finish(String error) {
+            Progress result = new Progress(processed, imported, failed, true, error);
+            listener.accept(result);
+            return result;
+        }
+
+        private void fail(long row, String message) {
+            failed++;
+            listener.accept(new RowError(row, message));
+        }
+    }
+}
@@ -1,60 +1,257 @@
 package com.example.webshop.services;
 
+import com.example.webshop.config.HibernateCacheConfig;
 import com.example.webshop.config.UploadStorage;
+import com.example.webshop.dto.FacetCountsDto;
+import com.example.webshop.dto.ItemFilter;
 import com.example.webshop.dto.ItemListDto;
+import com.example.webshop.dto.ItemPageDto;
 import com.example.webshop.exception.ApiException;
 import com.example.webshop.models.Item;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import com.example.webshop.repositories.ItemRepository;
+import com.example.webshop.search.ItemSearchIndex;
 import com.example.webshop.validation.EmailValidation;
+import com.example.webshop.validation.ItemValidation;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Cache;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 @Service
 public class ItemService {
 
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+
     private final ItemRepository itemRepository;
+    private final CatalogCache catalogCache;
+    private final ItemSearchIndex searchIndex;
+    private final CatalogFacets catalogFacets;
+    private final ApplicationEventPublisher events;
+    private final EntityManager entityManager;
+    private final ItemImageService itemImageService;
+    private final JdbcTemplate jdbc;
 
-    public ItemService(ItemRepository itemRepository) {
+    public ItemService(ItemRepository itemRepository, CatalogCache catalogCache, ItemSearchIndex searchIndex,
+                       CatalogFacets catalogFacets, ApplicationEventPublisher events, EntityManager entityManager,
+                       ItemImageService itemImageService, JdbcTemplate jdbc) {
         this.itemRepository = itemRepository;
+        this.jdbc = jdbc;
+        this.entityManager = entityManager;
+        this.itemImageService = itemImageService;
+        this.catalogCache = catalogCache;
+        this.searchIndex = searchIndex;
+        this.catalogFacets = catalogFacets;
+        this.events = events;
     }
 
     @Transactional
     public Item create(Item item) {
-        validateListingEmails(item);
-        // Валидация: поне email или телефон трябва да е попълнен
-        if ((item.getContactEmail() == null || item.getContactEmail().trim().isEmpty()) &&
-            (item.getContactPhone() == null || item.getContactPhone().trim().isEmpty())) {
-            throw new ApiException(HttpStatus.BAD_REQUEST, "Трябва да посочите поне email или телефон за контакт");
-        }
+        validateContacts(item);
         // saveAndFlush() принудително записва в базата данни веднага
-        return itemRepository.saveAndFlush(item);
+        Item saved = itemRepository.saveAndFlush(item);
+        // base64 снимки от JSON body-то отиват в item_image, не в image_url
+        itemImageService.drainInlineImages(saved);
+        return publishSaved(saved);
+    }
+
+    /**
+     * Обява заедно с вече подготвените (проверени, с изчислен SHA-256) снимки –
+     * една транзакция, снимките с един batch INSERT накрая.
+     */
+    @Transactional
+    public Item createWithImages(Item item, List<ItemImageService.PreparedImage> images) {
+        Item saved = create(item);
+        itemImageService.insertAll(saved.getId(), images);
+        return saved;
+    }
+
+    /**
+     * Нови обяви с един JDBC batch INSERT (без entity и flush за всяка) – за импорта.
+     * Редовете трябва вече да са минали {@link ItemValidation#requireValidNew} и {@link #validateContacts};
+     * VIP, продадено и снимките винаги започват празни. Кешовете се обновяват след commit.
+     */
+    @Transactional
+    public List<Long> insertBatch(List<Item> items) {
+        if (items.isEmpty()) {
+            return List.of();
+        }
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbc.batchUpdate(con -> con.prepareStatement("INSERT INTO item (title, description, price, owner_email, category, "
+                + "contact_email, contact_phone, payment_method, is_vip, sold) VALUES (?, ?, ?, ?, ?, ?, ?, ?, FALSE, FALSE)",
+                new String[]{"id"}), new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Item item = items.get(i);
+                ps.setString(1, item.getTitle().trim());
+                ps.setString(2, item.getDescription().trim());
+                ps.setBigDecimal(3, item.getPrice());
+                ps.setString(4, item.getOwnerEmail());
+                ps.setString(5, item.getCategory());
+                ps.setString(6, item.getContactEmail());
+                ps.setString(7, item.getContactPhone());
+                ps.setString(8, item.getPaymentMethod());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return items.size();
+            }
+        }, keys);
+        evictPageQueries();
+        List<Long> ids = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            Long id = ((Number) keys.getKeyList().get(i).values().iterator().next()).longValue();
+            ids.add(id);
+            Item item = items.get(i);
+            item.setIsVip(false);
+            item.setSold(false);
+            item.setImageUrl(null);
+            ItemListDto dto = ItemListDto.from(item);
+            dto.setId(id);
+            events.publishEvent(ItemChangedEvent.saved(dto));
+        }
+        return ids;
+    }
+
+    /**
+     * JDBC вмъкването не минава през Hibernate и не обновява timestamps на таблицата – кешираните
+     * страници се чистят веднага и още веднъж след commit (заявка междувременно може да ги е върнала).
+     */
+    private void evictPageQueries() {
+        Cache cache = entityManager.getEntityManagerFactory().getCache().unwrap(Cache.class);
+        cache.evictQueryRegion(HibernateCacheConfig.ITEM_PAGE_REGION);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.evictQueryRegion(HibernateCacheConfig.ITEM_PAGE_REGION);
+                }
+            });
+        }
     }
 
-    public List<Item> getAll() {
-        return getAllSorted();
+    /**
+     * Целият каталог със снимките, ред по ред: всяка обява се подава на {@code sink}
+     * и веднага се откача от persistence context-а, за да я събере GC.
+     * Пикът на паметта е един ред, не целият каталог.
+     */
+    @Transactional(readOnly = true)
+    public void streamAll(Consumer<Item> sink) {
+        try (Stream<Item> items = itemRepository.streamAllOrdered()) {
+            items.forEach(item -> {
+                sink.accept(item);
+                entityManager.detach(item);
+            });
+        }
     }
 
-    /** Списък БЕЗ imageUrl – за list view (избягваме 500 от големи base64 в response) */
+    /** Списък БЕЗ imageUrl – за list view; от снимката в {@link CatalogCache} */
     public List<ItemListDto> getAllForList() {
-        return getAllSorted().stream()
-                .map(ItemListDto::from)
-                .toList();
-    }
-
-    private List<Item> getAllSorted() {
-        List<Item> allItems = itemRepository.findAll();
-        allItems.sort((a, b) -> {
-            boolean aVip = a.getIsVip() != null && a.getIsVip();
-            boolean bVip = b.getIsVip() != null && b.getIsVip();
-            if (aVip && !bVip) return -1;
-            if (!aVip && bVip) return 1;
-            return 0;
-        });
-        return allItems;
+        return catalogCache.getList();
+    }
+
+    /** Пълнотекстово търсене по заглавие, описание и категория – от индекса в паметта, без SQL. */
+    public List<ItemListDto> search(String query, Integer limit) {
+        int size = limit != null ? limit : DEFAULT_PAGE_SIZE;
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        if (query == null || query.isBlank()) {
+            return List.of();
+        }
+        return searchIndex.search(query, size);
+    }
+
+    /**
+     * Keyset страница: VIP обявите първи, после останалите, всеки сегмент по id.
+     * Курсорът е позицията (isVip, id) на последния върнат ред – не OFFSET,
+     * затова цената на страница не расте с дълбочината. Филтрите се прилагат в SQL,
+     * а броячите за фасетите идват готови от {@link CatalogFacets}.
+     */
+    public ItemPageDto getPage(String after, Integer limit, ItemFilter filter, boolean withFacets) {
+        int size = limit != null ? limit : DEFAULT_PAGE_SIZE;
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        if (filter.minPrice() != null && filter.maxPrice() != null && filter.minPrice().compareTo(filter.maxPrice()) > 0) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "minPrice must not be greater than maxPrice");
+        }
+        boolean vip = true;
+        long afterId = 0L;
+        if (after != null && !after.isBlank()) {
+            long[] cursor = decodeCursor(after);
+            vip = cursor[0] == 1L;
+            afterId = cursor[1];
+        }
+        // ?vip=false прескача VIP сегмента; ?vip=true спира след него
+        if (Boolean.FALSE.equals(filter.vip()) && vip) {
+            vip = false;
+            afterId = 0L;
+        }
+
+        // size + 1 реда, за да знаем дали има следваща страница
+        List<ItemListDto> rows = new ArrayList<>();
+        if (vip || !Boolean.TRUE.equals(filter.vip())) {
+            rows.addAll(findSegment(vip, afterId, filter, size + 1));
+        }
+        if (vip && rows.size() <= size && !Boolean.TRUE.equals(filter.vip())) {
+            rows.addAll(findSegment(false, 0L, filter, size + 1 - rows.size()));
+        }
+
+        boolean hasMore = rows.size() > size;
+        List<ItemListDto> page = hasMore ? List.copyOf(rows.subList(0, size)) : rows;
+        String nextCursor = null;
+        if (hasMore) {
+            ItemListDto last = page.get(page.size() - 1);
+            nextCursor = encodeCursor(Boolean.TRUE.equals(last.getIsVip()), last.getId());
+        }
+        FacetCountsDto facets = withFacets ? catalogFacets.snapshot() : null;
+        return new ItemPageDto(page, nextCursor, facets);
+    }
+
+    private List<ItemListDto> findSegment(boolean vip, long afterId, ItemFilter filter, int count) {
+        String category = filter.category() != null && !filter.category().isBlank() ? filter.category().trim() : null;
+        return itemRepository.findListPageAfter(vip, afterId, category, filter.minPrice(), filter.maxPrice(),
+                filter.sold(), PageRequest.of(0, count));
+    }
+
+    private static String encodeCursor(boolean vip, long id) {
+        String raw = (vip ? "1" : "0") + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf(':');
+            String vip = raw.substring(0, sep);
+            if (!vip.equals("0") && !vip.equals("1")) {
+                throw new IllegalArgumentException(vip);
+            }
+            return new long[] { Long.parseLong(vip), Long.parseLong(raw.substring(sep + 1)) };
+        } catch (RuntimeException e) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
     }
 
     public Item getById(Long id) {
@@ -79,14 +276,21 @@ public class ItemService {
         item.setSold(updatedItem.getSold());
         // ownerEmail не го сменяме при update (за да не "крадат" обяви)
 
-        return itemRepository.save(item);
+        return publishSaved(itemRepository.save(item));
     }
 
     @Transactional
     public Item updateSold(Long id, Boolean sold) {
         Item item = getById(id);
         item.setSold(sold);
-        return itemRepository.save(item);
+        return publishSaved(itemRepository.save(item));
+    }
+
+    /** VIP статус – единствената точка за промяна (VipController, VipPaymentService). */
+    @Transactional
+    public Item setVip(Item item, boolean vip) {
+        item.setIsVip(vip);
+        return publishSaved(itemRepository.saveAndFlush(item));
     }
 
     @Transactional
@@ -102,7 +306,24 @@ public class ItemService {
                 }
             }
         });
+        itemImageService.deleteForItem(id);
         itemRepository.deleteById(id);
+        events.publishEvent(ItemChangedEvent.deleted(id));
+    }
+
+    private Item publishSaved(Item item) {
+        events.publishEvent(ItemChangedEvent.saved(item));
+        return item;
+    }
+
+    /** Правилата на create() отвъд задължителните полета: валидни email-и и поне един контакт. */
+    public void validateContacts(Item item) {
+        validateListingEmails(item);
+        // Валидация: поне email или телефон трябва да е попълнен
+        if ((item.getContactEmail() == null || item.getContactEmail().trim().isEmpty()) &&
+            (item.getContactPhone() == null || item.getContactPhone().trim().isEmpty())) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "Трябва да посочите поне email или телефон за контакт");
+        }
     }
 
     private void validateListingEmails(Item item) {
@@ -7,22 +7,27 @@ import com.example.webshop.validation.EmailValidation;
 import org.springframework.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Service
 public class UserService {
 
     private static final Logger logger = LoggerFactory.getLogger(UserService.class);
     private final UserRepository userRepository;
-    private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder(6);
+    private final PasswordHasher passwordHasher;
+    private final TransactionTemplate transactionTemplate;
 
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository, PasswordHasher passwordHasher,
+                       PlatformTransactionManager transactionManager) {
         this.userRepository = userRepository;
+        this.passwordHasher = passwordHasher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setTimeout(30);
     }
 
-    @Transactional(readOnly = false, timeout = 30)
+    /** Хешът се прави преди транзакцията – докато чака в опашката, не държи връзка към базата. */
     public User register(String email, String password, String fullName) {
         String e = EmailValidation.trim(email);
         if (!EmailValidation.isValid(e)) {
@@ -32,32 +37,11 @@ public class UserService {
         long startTime = System.currentTimeMillis();
         
         try {
-            // Оптимизирана проверка - използваме existsByEmail за по-бърза проверка
-            logger.debug("Checking if email exists: {}", e);
-            if (userRepository.existsByEmail(e)) {
-                logger.warn("Registration failed - email already exists: {}", e);
-                throw new ApiException(HttpStatus.CONFLICT, "Email already in use!");
-            }
-            logger.debug("Email check completed in {}ms", System.currentTimeMillis() - startTime);
-
             logger.debug("Encoding password for email: {}", e);
             long encodeStart = System.currentTimeMillis();
-            String encodedPassword = passwordEncoder.encode(password);
+            String encodedPassword = passwordHasher.encode(password);
             logger.debug("Password encoded in {}ms", System.currentTimeMillis() - encodeStart);
-
-            User newUser = new User(e, encodedPassword, fullName);
-            logger.debug("Creating user object for email: {}", e);
-            
-            // Използваме save() за по-бързо записване - Spring ще направи flush автоматично при commit
-            // Това е по-бързо от saveAndFlush() защото не прави синхронно flush
-            logger.debug("Saving user to database...");
-            long saveStart = System.currentTimeMillis();
-            User saved = userRepository.save(newUser);
-            logger.info("User saved successfully with ID: {} in {}ms", saved.getId(), System.currentTimeMillis() - saveStart);
-            
-            long totalTime = System.currentTimeMillis() - startTime;
-            logger.info("Registration completed successfully for email: {} in {}ms", e, totalTime);
-            return saved;
+            return transactionTemplate.execute(status -> save(e, encodedPassword, fullName, startTime));
         } catch (ApiException ex) {
             throw ex;
         } catch (Exception ex) {
@@ -66,6 +50,29 @@ public class UserService {
         }
     }
 
+    private User save(String e, String encodedPassword, String fullName, long startTime) {
+        // Оптимизирана проверка - използваме existsByEmail за по-бърза проверка
+        logger.debug("Checking if email exists: {}", e);
+        if (userRepository.existsByEmail(e)) {
+            logger.warn("Registration failed - email already exists: {}", e);
+            throw new ApiException(HttpStatus.CONFLICT, "Email already in use!");
+        }
+
+        User newUser = new User(e, encodedPassword, fullName);
+        logger.debug("Creating user object for email: {}", e);
+
+        // Използваме save() за по-бързо записване - Spring ще направи flush автоматично при commit
+        // Това е по-бързо от saveAndFlush() защото не прави синхронно flush
+        logger.debug("Saving user to database...");
+        long saveStart = System.currentTimeMillis();
+        User saved = userRepository.save(newUser);
+        logger.info("User saved successfully with ID: {} in {}ms", saved.getId(), System.currentTimeMillis() - saveStart);
+
+        long totalTime = System.currentTimeMillis() - startTime;
+        logger.info("Registration completed successfully for email: {} in {}ms", e, totalTime);
+        return saved;
+    }
+
     public User login(String email, String password) {
         String e = EmailValidation.trim(email);
         if (!EmailValidation.isValid(e)) {
@@ -78,7 +85,7 @@ public class UserService {
                     return new ApiException(HttpStatus.UNAUTHORIZED, "Invalid email or password");
                 });
 
-        boolean passwordMatches = passwordEncoder.matches(password, user.getPassword());
+        boolean passwordMatches = passwordHasher.matches(password, user.getPassword());
         logger.debug("Password matches: {}", passwordMatches);
         
         if (!passwordMatches) {
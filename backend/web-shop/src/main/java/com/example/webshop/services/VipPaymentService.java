@@ -29,13 +29,16 @@ public class VipPaymentService {
 
     private final VipPaymentRepository vipPaymentRepository;
     private final ItemRepository itemRepository;
+    private final ItemService itemService;
     
     @Value("${stripe.secret.key:}")
     private String stripeSecretKey;
 
-    public VipPaymentService(VipPaymentRepository vipPaymentRepository, ItemRepository itemRepository) {
+    public VipPaymentService(VipPaymentRepository vipPaymentRepository, ItemRepository itemRepository,
+                             ItemService itemService) {
         this.vipPaymentRepository = vipPaymentRepository;
         this.itemRepository = itemRepository;
+        this.itemService = itemService;
     }
 
     /**
@@ -136,8 +139,7 @@ public class VipPaymentService {
         Item item = itemRepository.findById(payment.getItemId())
                 .orElseThrow(() -> new ApiException(HttpStatus.NOT_FOUND, "Item not found: " + payment.getItemId()));
 
-        item.setIsVip(true);
-        itemRepository.save(item);
+        itemService.setVip(item, true);
 
         // Обнови плащането
         payment.setStatus("COMPLETED");
@@ -0,0 +1,34 @@
+package com.example.webshop.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Хранилище за байтовете на снимките (оригинали и варианти). В {@code item_image}
+ * остават само метаданните, името на хранилището ({@link #name()}) и ключът.
+ * Реализации: {@code db} (bytea в PostgreSQL), {@code fs} (локален диск), {@code s3} (S3-съвместимо).
+ */
+public interface BlobStore {
+
+    /** Кратко име – записва се в колоната {@code storage}. */
+    String name();
+
+    /** Записва точно {@code length} байта от потока под {@code key}; съществуващ ключ се презаписва. */
+    void put(String key, InputStream data, long length, String contentType) throws IOException;
+
+    /** Целият blob; празно, ако ключът не съществува. */
+    Optional<byte[]> get(String key) throws IOException;
+
+    /**
+     * Локалният файл на blob-а – за поточно отдаване (sendfile, Range) без копие в heap-а.
+     * Празно за хранилища без файлове на диска или ако ключът не съществува.
+     */
+    default Optional<Path> file(String key) throws IOException {
+        return Optional.empty();
+    }
+
+    /** Без грешка, ако ключът вече липсва. */
+    void delete(String key) throws IOException;
+}
@@ -0,0 +1,126 @@
+package com.example.webshop.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Наличните {@link BlobStore} по име и активното за нови записи ({@code app.storage.backend}).
+ * Четенето винаги е по името, записано при реда – старите blob-ове остават достъпни след смяна.
+ */
+@Component
+public class BlobStores {
+
+    private static final Logger log = LoggerFactory.getLogger(BlobStores.class);
+
+    private final Map<String, BlobStore> stores;
+    private final BlobStore active;
+
+    public BlobStores(List<BlobStore> stores, @Value("${app.storage.backend:db}") String backend) {
+        this.stores = stores.stream().collect(Collectors.toUnmodifiableMap(BlobStore::name, Function.identity()));
+        this.active = byName(backend);
+    }
+
+    /** Хранилището за нови снимки. */
+    public BlobStore active() {
+        return active;
+    }
+
+    public BlobStore byName(String name) {
+        BlobStore store = stores.get(name);
+        if (store == null) {
+            throw new IllegalStateException("Blob store '" + name + "' is not configured (available: " + stores.keySet() + ")");
+        }
+        return store;
+    }
+
+    /**
+     * Записва в активното хранилище и връща името му. При rollback на текущата транзакция
+     * blob-ът се трие – иначе би останал без ред в item_image (за {@code db} го връща самата база).
+     */
+    public String put(String key, InputStream data, long length, String contentType) throws IOException {
+        return putTo(active, key, data, length, contentType);
+    }
+
+    /** Като {@link #put}, но в конкретно хранилище (напр. при миграция между хранилищата). */
+    public String putTo(BlobStore store, String key, InputStream data, long length, String contentType) throws IOException {
+        store.put(key, data, length, contentType);
+        if (!DatabaseBlobStore.NAME.equals(store.name()) && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        deleteQuietly(store, key);
+                    }
+                }
+            });
+        }
+        return store.name();
+    }
+
+    /** Трие blob-а след commit (или веднага без транзакция) – редът вече не сочи към него. */
+    public void deleteAfterCommit(String storage, String key) {
+        if (storage == null || key == null) {
+            return;
+        }
+        BlobStore store = byName(storage);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    deleteQuietly(store, key);
+                }
+            });
+        } else {
+            deleteQuietly(store, key);
+        }
+    }
+
+    private static void deleteQuietly(BlobStore store, String key) {
+        try {
+            store.delete(key);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to delete blob {} from {}: {}", key, store.name(), e.getMessage());
+        }
+    }
+
+    /**
+     * Байтовете на ред с колони storage/storage_key; {@code inline} е старата bytea колона
+     * за редове отпреди хранилищата (storage = null).
+     */
+    public Optional<byte[]> read(String storage, String key, byte[] inline) {
+        if (storage == null) {
+            return Optional.ofNullable(inline);
+        }
+        try {
+            return byName(storage).get(key);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Файлът на диска за ред с колони storage/storage_key; празно извън {@code fs}. */
+    public Optional<Path> file(String storage, String key) {
+        if (storage == null || key == null) {
+            return Optional.empty();
+        }
+        try {
+            return byName(storage).file(key);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.webshop.storage;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Blob-ове в таблица {@code blob_data} (bytea) в основната база – по подразбиране,
+ * защото Render няма постоянен диск. Записът участва в текущата транзакция.
+ */
+@Component
+public class DatabaseBlobStore implements BlobStore {
+
+    public static final String NAME = "db";
+
+    private final JdbcTemplate jdbc;
+
+    public DatabaseBlobStore(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void put(String key, InputStream data, long length, String contentType) {
+        jdbc.update("DELETE FROM blob_data WHERE blob_key = ?", key);
+        jdbc.update(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "INSERT INTO blob_data (blob_key, content_type, size_bytes, data, created_at) VALUES (?, ?, ?, ?, ?)");
+            ps.setString(1, key);
+            ps.setString(2, contentType);
+            ps.setLong(3, length);
+            ps.setBinaryStream(4, data, length);
+            ps.setTimestamp(5, Timestamp.valueOf(LocalDateTime.now()));
+            return ps;
+        });
+    }
+
+    @Override
+    public Optional<byte[]> get(String key) {
+        List<byte[]> rows = jdbc.query("SELECT data FROM blob_data WHERE blob_key = ?",
+                (rs, i) -> rs.getBytes(1), key);
+        return rows.stream().findFirst();
+    }
+
+    @Override
+    public void delete(String key) {
+        jdbc.update("DELETE FROM blob_data WHERE blob_key = ?", key);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.webshop.storage;
+
+import com.example.webshop.config.UploadStorage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Blob-ове като файлове под {@code app.storage.fs.root} (по подразбиране папката на
+ * {@link UploadStorage}). Ключът става относителен път; записът е през временен файл
+ * и atomic move, за да не се чете наполовина записан файл.
+ */
+@Component
+public class FileSystemBlobStore implements BlobStore {
+
+    public static final String NAME = "fs";
+
+    /** Само сегменти от букви, цифри, '-', '_' и '.', разделени с '/'; без "..". */
+    private static final Pattern SAFE_KEY = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9._-]*(/[A-Za-z0-9_-][A-Za-z0-9._-]*)*");
+
+    private final Path root;
+
+    public FileSystemBlobStore(@Value("${app.storage.fs.root:}") String root) {
+        this.root = root == null || root.isBlank()
+                ? UploadStorage.getUploadRoot()
+                : Paths.get(root).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void put(String key, InputStream data, long length, String contentType) throws IOException {
+        Path file = resolve(key);
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.getParent(), ".upload-", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                long copied = data.transferTo(out);
+                if (copied != length) {
+                    throw new IOException("Expected " + length + " bytes for " + key + ", got " + copied);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public Optional<byte[]> get(String key) throws IOException {
+        try {
+            return Optional.of(Files.readAllBytes(resolve(key)));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<Path> file(String key) throws IOException {
+        Path file = resolve(key);
+        return Files.isRegularFile(file) ? Optional.of(file) : Optional.empty();
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    private Path resolve(String key) throws IOException {
+        if (key == null || !SAFE_KEY.matcher(key).matches() || key.contains("..")) {
+            throw new IOException("Invalid blob key: " + key);
+        }
+        Path file = root.resolve(key).normalize();
+        if (!file.startsWith(root)) {
+            throw new IOException("Invalid blob key: " + key);
+        }
+        return file;
+    }
+}
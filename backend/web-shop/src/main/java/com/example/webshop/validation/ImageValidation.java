@@ -0,0 +1,374 @@
+package com.example.webshop.validation;
+
+import com.example.webshop.exception.ApiException;
+import org.springframework.http.HttpStatus;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Проверки и декодиране на снимки с предвидима памет. Размерите се четат само от хедъра,
+ * над {@link #MAX_PIXELS} снимката се отхвърля (400), а декодирането минава през ImageIO
+ * subsampling, така че растерът да е до {@link #DECODE_MAX_PIXELS} пиксела.
+ * {@link #stripMetadata} маха EXIF/XMP и текстовите метаданни поточно.
+ */
+public final class ImageValidation {
+
+    /** Най-много ширина × височина за качена снимка (~40 MP). */
+    public static final long MAX_PIXELS = 40_000_000L;
+    /** Най-много пиксела в един декодиран растер (~32MB като ARGB). */
+    public static final long DECODE_MAX_PIXELS = 8_000_000L;
+
+    private static final byte[] EXIF_HEADER = "Exif\0\0".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] XMP_HEADER = "http://ns.adobe.com/xap/1.0/\0".getBytes(StandardCharsets.ISO_8859_1);
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+
+    private ImageValidation() {
+    }
+
+    public record Dimensions(int width, int height) {
+
+        public long pixels() {
+            return (long) width * height;
+        }
+    }
+
+    /** Декодираният растер и размерите на оригинала (растерът може да е по-малък при subsampling). */
+    public record Decoded(BufferedImage image, int width, int height) {
+
+        public boolean subsampled() {
+            return image.getWidth() < width;
+        }
+    }
+
+    /**
+     * Размерите от хедъра, без пикселите; null, ако не могат да се прочетат.
+     * WebP се чете директно от RIFF хедъра – native декодерът не е нужен и не буферира целия файл.
+     */
+    public static Dimensions readDimensions(InputStream in, String mimeType) throws IOException {
+        if ("image/webp".equals(mimeType)) {
+            return webpDimensions(in.readNBytes(30));
+        }
+        try (ImageInputStream iis = new MemoryCacheImageInputStream(in)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                return new Dimensions(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /** Размерите от първия chunk след RIFF/WEBP: VP8 (lossy), VP8L (lossless) или VP8X (разширен). */
+    static Dimensions webpDimensions(byte[] head) {
+        if (head.length < 30 || !fourcc(head, 0, "RIFF") || !fourcc(head, 8, "WEBP")) {
+            return null;
+        }
+        if (fourcc(head, 12, "VP8 ")) {
+            // 3 байта frame tag, start code 9D 01 2A, после 14-битови ширина и височина
+            if ((head[23] & 0xFF) != 0x9D || (head[24] & 0xFF) != 0x01 || (head[25] & 0xFF) != 0x2A) {
+                return null;
+            }
+            return new Dimensions((int) readUnsigned(head, 26, 2, true) & 0x3FFF,
+                    (int) readUnsigned(head, 28, 2, true) & 0x3FFF);
+        }
+        if (fourcc(head, 12, "VP8L")) {
+            // Сигнатура 0x2F, после (ширина − 1) и (височина − 1) по 14 бита
+            if ((head[20] & 0xFF) != 0x2F) {
+                return null;
+            }
+            long bits = readUnsigned(head, 21, 4, true);
+            return new Dimensions((int) (bits & 0x3FFF) + 1, (int) ((bits >> 14) & 0x3FFF) + 1);
+        }
+        if (fourcc(head, 12, "VP8X")) {
+            // 4 байта флагове, после (ширина − 1) и (височина − 1) по 24 бита
+            return new Dimensions((int) readUnsigned(head, 24, 3, true) + 1,
+                    (int) readUnsigned(head, 27, 3, true) + 1);
+        }
+        return null;
+    }
+
+    private static boolean fourcc(byte[] bytes, int pos, String tag) {
+        byte[] expected = tag.getBytes(StandardCharsets.ISO_8859_1);
+        return Arrays.equals(bytes, pos, pos + 4, expected, 0, 4);
+    }
+
+    /** 400, ако размерите не са известни или снимката е над бюджета. */
+    public static void requireWithinBudget(Dimensions dimensions) {
+        if (dimensions == null) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "Cannot read image dimensions");
+        }
+        if (dimensions.width() <= 0 || dimensions.height() <= 0) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "Invalid image dimensions");
+        }
+        if (dimensions.pixels() > MAX_PIXELS) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "Image dimensions are too large ("
+                    + dimensions.width() + "x" + dimensions.height() + "). Maximum is 40 megapixels.");
+        }
+    }
+
+    /**
+     * Декодира първия кадър с subsampling: растерът е до {@link #DECODE_MAX_PIXELS}, а при
+     * {@code targetWidth > 0} – не повече от двойно по-широк от нужното. null при непознат формат.
+     */
+    public static Decoded decode(byte[] bytes, int targetWidth) throws IOException {
+        try (ImageInputStream iis = new MemoryCacheImageInputStream(new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                // ignoreMetadata – EXIF/ICC дърветата не се изграждат
+                reader.setInput(iis, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int step = subsampling(width, height, targetWidth);
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                return new Decoded(reader.read(0, param), width, height);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    static int subsampling(int width, int height, int targetWidth) {
+        int step = targetWidth > 0 ? Math.max(1, width / (2 * targetWidth)) : 1;
+        while ((long) ceilDiv(width, step) * ceilDiv(height, step) > DECODE_MAX_PIXELS) {
+            step++;
+        }
+        return step;
+    }
+
+    private static int ceilDiv(int value, int step) {
+        return (value + step - 1) / step;
+    }
+
+    /**
+     * Потокът без метаданни: при JPEG – APP1 (EXIF, XMP), APP13 (IPTC) и коментари, като
+     * ориентацията се запазва в минимален EXIF; при PNG – eXIf, tEXt, zTXt, iTXt и tIME.
+     * Пикселите не се прекодират; другите формати минават непроменени.
+     */
+    public static InputStream stripMetadata(InputStream in, String mimeType) throws IOException {
+        if ("image/jpeg".equals(mimeType)) {
+            return stripJpeg(in);
+        }
+        if ("image/png".equals(mimeType)) {
+            return new PngMetadataFilter(in);
+        }
+        return in;
+    }
+
+    /** Сегментите до SOS се филтрират в паметта (само хедърът), останалото минава поточно. */
+    private static InputStream stripJpeg(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        byte[] soi = data.readNBytes(2);
+        head.write(soi);
+        if (soi.length < 2 || (soi[0] & 0xFF) != 0xFF || (soi[1] & 0xFF) != 0xD8) {
+            return new SequenceInputStream(new ByteArrayInputStream(head.toByteArray()), in);
+        }
+        while (true) {
+            int b = data.read();
+            if (b < 0) {
+                break;
+            }
+            if (b != 0xFF) {
+                head.write(b); // повреден файл – останалото минава както е
+                break;
+            }
+            int marker = data.read();
+            while (marker == 0xFF) {
+                marker = data.read();
+            }
+            if (marker < 0) {
+                head.write(0xFF);
+                break;
+            }
+            // SOS, EOI и маркерите без дължина – край на хедъра
+            if (marker == 0xDA || marker == 0xD9 || marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                head.write(0xFF);
+                head.write(marker);
+                break;
+            }
+            int length = data.readUnsignedShort();
+            if (length < 2) {
+                throw new IOException("Invalid JPEG segment length");
+            }
+            byte[] payload = data.readNBytes(length - 2);
+            if (payload.length < length - 2) {
+                throw new EOFException("Truncated JPEG segment");
+            }
+            if (marker == 0xE1 && startsWith(payload, EXIF_HEADER)) {
+                int orientation = exifOrientation(payload);
+                if (orientation > 1) {
+                    head.write(orientationOnlyExif(orientation));
+                }
+                continue;
+            }
+            if ((marker == 0xE1 && startsWith(payload, XMP_HEADER)) || marker == 0xED || marker == 0xFE) {
+                continue;
+            }
+            head.write(0xFF);
+            head.write(marker);
+            head.write(length >> 8);
+            head.write(length & 0xFF);
+            head.write(payload);
+        }
+        return new SequenceInputStream(new ByteArrayInputStream(head.toByteArray()), in);
+    }
+
+    /** Orientation (0x0112) от IFD0; 1 (без завъртане), ако липсва или блокът е повреден. */
+    static int exifOrientation(byte[] app1) {
+        int tiff = EXIF_HEADER.length;
+        if (app1.length < tiff + 8) {
+            return 1;
+        }
+        boolean little = app1[tiff] == 'I' && app1[tiff + 1] == 'I';
+        long ifd = readUnsigned(app1, tiff + 4, 4, little);
+        if (ifd < 8 || tiff + ifd + 2 > app1.length) {
+            return 1;
+        }
+        int pos = (int) (tiff + ifd);
+        int entries = (int) readUnsigned(app1, pos, 2, little);
+        pos += 2;
+        for (int i = 0; i < entries && pos + 12 <= app1.length; i++, pos += 12) {
+            if (readUnsigned(app1, pos, 2, little) == EXIF_ORIENTATION_TAG) {
+                int value = (int) readUnsigned(app1, pos + 8, 2, little);
+                return value >= 1 && value <= 8 ? value : 1;
+            }
+        }
+        return 1;
+    }
+
+    /** APP1 сегмент с един таг – Orientation (TIFF big-endian). */
+    private static byte[] orientationOnlyExif(int orientation) {
+        byte[] tiff = {
+                'M', 'M', 0, 42, 0, 0, 0, 8,          // хедър, IFD0 на отместване 8
+                0, 1,                                   // един запис
+                0x01, 0x12, 0, 3, 0, 0, 0, 1,           // Orientation, SHORT, count 1
+                0, (byte) orientation, 0, 0,
+                0, 0, 0, 0                              // няма следващ IFD
+        };
+        int length = 2 + EXIF_HEADER.length + tiff.length;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length + 2);
+        out.write(0xFF);
+        out.write(0xE1);
+        out.write(length >> 8);
+        out.write(length & 0xFF);
+        out.writeBytes(EXIF_HEADER);
+        out.writeBytes(tiff);
+        return out.toByteArray();
+    }
+
+    private static long readUnsigned(byte[] bytes, int pos, int size, boolean littleEndian) {
+        long value = 0;
+        for (int i = 0; i < size; i++) {
+            int b = bytes[littleEndian ? pos + size - 1 - i : pos + i] & 0xFF;
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        return bytes.length >= prefix.length && Arrays.equals(bytes, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    /** Пропуска chunk-овете с метаданни; IDAT и останалите минават поточно, без буфер. */
+    private static final class PngMetadataFilter extends InputStream {
+
+        private static final Set<String> DROPPED = Set.of("eXIf", "tEXt", "zTXt", "iTXt", "tIME");
+
+        private final InputStream in;
+        private byte[] pending = new byte[0];
+        private int pendingPos;
+        private long passThrough;
+        private boolean signatureRead;
+
+        PngMetadataFilter(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                if (pendingPos < pending.length) {
+                    int n = Math.min(len, pending.length - pendingPos);
+                    System.arraycopy(pending, pendingPos, b, off, n);
+                    pendingPos += n;
+                    return n;
+                }
+                if (passThrough > 0) {
+                    int n = in.read(b, off, (int) Math.min(len, passThrough));
+                    if (n > 0) {
+                        passThrough -= n;
+                    }
+                    return n;
+                }
+                if (!signatureRead) {
+                    signatureRead = true;
+                    setPending(in.readNBytes(8));
+                    continue;
+                }
+                byte[] header = in.readNBytes(8);
+                if (header.length < 8) {
+                    if (header.length == 0) {
+                        return -1;
+                    }
+                    setPending(header);
+                    continue;
+                }
+                long length = readUnsigned(header, 0, 4, false);
+                String type = new String(header, 4, 4, StandardCharsets.ISO_8859_1);
+                if (DROPPED.contains(type)) {
+                    in.skipNBytes(length + 4); // данни + CRC
+                    continue;
+                }
+                setPending(header);
+                passThrough = length + 4;
+            }
+        }
+
+        private void setPending(byte[] bytes) {
+            pending = bytes;
+            pendingPos = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
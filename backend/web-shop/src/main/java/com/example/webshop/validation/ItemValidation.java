@@ -0,0 +1,40 @@
+package com.example.webshop.validation;
+
+import com.example.webshop.exception.ApiException;
+import com.example.webshop.models.Item;
+import org.springframework.http.HttpStatus;
+
+import java.math.BigDecimal;
+
+/**
+ * Задължителните полета на нова обява – общи за POST /items и POST /items/with-images.
+ * Хвърля {@link ApiException} (400) с първото нарушение.
+ */
+public final class ItemValidation {
+
+    public static final int MIN_DESCRIPTION_LENGTH = 40;
+
+    private ItemValidation() {
+    }
+
+    public static void requireValidNew(Item item) {
+        if (item == null) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "Item data is required");
+        }
+        if (item.getTitle() == null || item.getTitle().trim().isEmpty()) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "Title is required");
+        }
+        if (item.getDescription() == null || item.getDescription().trim().isEmpty()) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "Description is required");
+        }
+        if (item.getDescription().trim().length() < MIN_DESCRIPTION_LENGTH) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "Description must be at least 40 characters");
+        }
+        if (item.getPrice() == null || item.getPrice().compareTo(BigDecimal.ZERO) <= 0) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "Price must be greater than 0");
+        }
+        if (item.getOwnerEmail() == null || item.getOwnerEmail().trim().isEmpty()) {
+            throw new ApiException(HttpStatus.BAD_REQUEST, "Owner email is required");
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.webshop.config;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Кешът на проверените токени не бива да надживява токена.
+ */
+class JwtUtilTest {
+
+    private static final String SECRET = "test-jwt-secret-at-least-32-bytes-long!";
+
+    @Test
+    void cachedTokenIsRejectedAfterExpiry() throws InterruptedException {
+        JwtUtil jwtUtil = new JwtUtil(SECRET, 1500);
+        String token = jwtUtil.generateToken("a@b.bg");
+
+        assertThat(jwtUtil.parseClaims(token).getSubject()).isEqualTo("a@b.bg");
+        assertThat(jwtUtil.validateToken(token, "a@b.bg")).isTrue();
+
+        Thread.sleep(2100);
+
+        assertThatThrownBy(() -> jwtUtil.parseClaims(token)).isInstanceOf(ExpiredJwtException.class);
+        assertThat(jwtUtil.validateToken(token, "a@b.bg")).isFalse();
+    }
+
+    @Test
+    void tamperedTokenIsRejected() {
+        JwtUtil jwtUtil = new JwtUtil(SECRET, 60_000);
+        String token = jwtUtil.generateToken("a@b.bg");
+        jwtUtil.parseClaims(token);
+
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+
+        assertThatThrownBy(() -> jwtUtil.parseClaims(tampered)).isInstanceOf(JwtException.class);
+    }
+}
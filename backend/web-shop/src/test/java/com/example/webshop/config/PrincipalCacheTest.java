@@ -0,0 +1,72 @@
+package com.example.webshop.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Запис живее до min(TTL, изтичането на токена) и се маха при промяна на потребителя.
+ */
+class PrincipalCacheTest {
+
+    private final PrincipalCache cache = new PrincipalCache(Duration.ofMinutes(5));
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Date issuedAt = new Date();
+
+    @Test
+    void secondLookupIsServedFromCache() {
+        Date expiresAt = inMillis(60_000);
+
+        cache.get("a@b.bg", issuedAt, expiresAt, loader("a@b.bg"));
+        UserDetails principal = cache.get("a@b.bg", issuedAt, expiresAt, loader("a@b.bg"));
+
+        assertThat(principal.getUsername()).isEqualTo("a@b.bg");
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void entryExpiresWithToken() throws InterruptedException {
+        Date expiresAt = inMillis(100);
+
+        cache.get("a@b.bg", issuedAt, expiresAt, loader("a@b.bg"));
+        Thread.sleep(200);
+        cache.get("a@b.bg", issuedAt, expiresAt, loader("a@b.bg"));
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void evictRemovesAllTokensOfSubject() {
+        Date expiresAt = inMillis(60_000);
+        Date otherIssuedAt = new Date(issuedAt.getTime() - 1000);
+
+        cache.get("a@b.bg", issuedAt, expiresAt, loader("a@b.bg"));
+        cache.get("a@b.bg", otherIssuedAt, expiresAt, loader("a@b.bg"));
+        cache.get("c@d.bg", issuedAt, expiresAt, loader("c@d.bg"));
+        cache.evict("a@b.bg");
+        cache.get("a@b.bg", issuedAt, expiresAt, loader("a@b.bg"));
+        cache.get("a@b.bg", otherIssuedAt, expiresAt, loader("a@b.bg"));
+        cache.get("c@d.bg", issuedAt, expiresAt, loader("c@d.bg"));
+
+        assertThat(loads).hasValue(5);
+    }
+
+    private Supplier<UserDetails> loader(String email) {
+        return () -> {
+            loads.incrementAndGet();
+            return new User(email, "", List.of());
+        };
+    }
+
+    private static Date inMillis(long millis) {
+        return new Date(System.currentTimeMillis() + millis);
+    }
+}
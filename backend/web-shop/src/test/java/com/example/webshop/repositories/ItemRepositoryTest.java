@@ -0,0 +1,118 @@
+package com.example.webshop.repositories;
+
+import com.example.webshop.config.HibernateCacheConfig;
+import com.example.webshop.config.PrincipalCache;
+import com.example.webshop.dto.ItemListDto;
+import com.example.webshop.models.Item;
+import jakarta.persistence.EntityManager;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Списъчните заявки и кешът на Item не бива да четат image_url (base64 LOB) – проверява се
+ * генерираният SQL. Класовете са enhance-нати при build (lazy imageUrl).
+ */
+@DataJpaTest(properties = {
+        // без диалекта на приложението (PostgreSQL) – Hibernate разпознава H2 сам
+        "spring.jpa.database-platform=",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "com.example.webshop.repositories.ItemRepositoryTest$SqlCapture"
+})
+@Import({HibernateCacheConfig.class, PrincipalCache.class})
+class ItemRepositoryTest {
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @BeforeEach
+    void setUp() {
+        itemRepository.save(item("Телефон", false));
+        itemRepository.save(item("Лаптоп", true));
+        entityManager.flush();
+        entityManager.clear();
+        SqlCapture.STATEMENTS.clear();
+    }
+
+    @Test
+    void findAllListRowsDoesNotReadImageUrl() {
+        List<ItemListDto> rows = itemRepository.findAllListRows();
+
+        assertThat(rows).extracting(ItemListDto::getTitle).containsExactly("Лаптоп", "Телефон");
+        assertNoImageUrl();
+    }
+
+    @Test
+    void findListPageAfterDoesNotReadImageUrl() {
+        List<ItemListDto> rows = itemRepository.findListPageAfter(false, 0, null, null, null, null,
+                PageRequest.of(0, 10));
+
+        assertThat(rows).extracting(ItemListDto::getTitle).containsExactly("Телефон");
+        assertNoImageUrl();
+    }
+
+    @Test
+    void findByIdLoadsImageUrlOnlyOnAccess() {
+        Long id = itemRepository.findAllListRows().get(0).getId();
+        SqlCapture.STATEMENTS.clear();
+
+        Item item = itemRepository.findById(id).orElseThrow();
+        assertNoImageUrl();
+
+        assertThat(item.getImageUrl()).startsWith("data:image/png");
+        assertThat(SqlCapture.STATEMENTS).last().asString().containsIgnoringCase("image_url");
+    }
+
+    @Test
+    @Transactional(readOnly = true)
+    void streamAllOrderedReadsImageUrlInOneStatement() {
+        try (Stream<Item> items = itemRepository.streamAllOrdered()) {
+            assertThat(items.map(Item::getImageUrl)).hasSize(2).allMatch(url -> url.startsWith("data:"));
+        }
+        assertThat(SqlCapture.STATEMENTS).hasSize(1);
+    }
+
+    private static void assertNoImageUrl() {
+        assertThat(SqlCapture.STATEMENTS).isNotEmpty();
+        assertThat(SqlCapture.STATEMENTS)
+                .allSatisfy(sql -> assertThat(sql.toLowerCase(Locale.ROOT)).doesNotContain("image_url"));
+    }
+
+    private static Item item(String title, boolean vip) {
+        Item item = new Item();
+        item.setTitle(title);
+        item.setDescription("Описание за " + title);
+        item.setPrice(BigDecimal.TEN);
+        item.setImageUrl("data:image/png;base64,iVBORw0KGgo=");
+        item.setIsVip(vip);
+        return item;
+    }
+
+    /** Hibernate го създава по име на класа – затова списъкът е статичен. */
+    public static class SqlCapture implements StatementInspector {
+
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.webshop.storage;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link S3BlobStore} срещу S3 заместител в процеса (path-style, като MinIO): PUT, GET и DELETE
+ * на обекти, 404 NoSuchKey за липсващ ключ. Без Docker – сървърът е от JDK.
+ */
+class S3BlobStoreTest {
+
+    private static final String BUCKET = "webshop-images";
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private HttpServer server;
+    private S3BlobStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        store = new S3BlobStore(BUCKET, "us-east-1", "http://127.0.0.1:" + server.getAddress().getPort(),
+                "minio", "minio-secret", true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+        server.stop(0);
+    }
+
+    @Test
+    void putThenGetReturnsSameBytes() throws IOException {
+        byte[] data = "jpeg bytes".getBytes(StandardCharsets.UTF_8);
+
+        store.put("images/1/a", new ByteArrayInputStream(data), data.length, "image/jpeg");
+
+        assertThat(objects).containsKey("/" + BUCKET + "/images/1/a");
+        assertThat(store.get("images/1/a")).hasValue(data);
+    }
+
+    @Test
+    void getMissingKeyIsEmpty() throws IOException {
+        assertThat(store.get("images/404")).isEmpty();
+    }
+
+    @Test
+    void deleteRemovesObjectAndIgnoresMissingKey() throws IOException {
+        byte[] data = {1, 2, 3};
+        store.put("variants/1/160", new ByteArrayInputStream(data), data.length, "image/jpeg");
+
+        store.delete("variants/1/160");
+        store.delete("variants/1/160");
+
+        assertThat(store.get("variants/1/160")).isEmpty();
+    }
+
+    @Test
+    void fileIsNotAvailable() throws IOException {
+        assertThat(store.file("images/1/a")).isEmpty();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        switch (exchange.getRequestMethod()) {
+            case "PUT" -> {
+                byte[] data = body(exchange);
+                objects.put(path, data);
+                // SDK-то сверява ETag-а с MD5 на изпратеното – като при S3 и MinIO
+                exchange.getResponseHeaders().add("ETag", "\"" + md5(data) + "\"");
+                exchange.sendResponseHeaders(200, -1);
+            }
+            case "GET" -> {
+                byte[] data = objects.get(path);
+                if (data == null) {
+                    byte[] error = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Error><Code>NoSuchKey</Code>"
+                            + "<Message>The specified key does not exist.</Message></Error>").getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().add("Content-Type", "application/xml");
+                    exchange.sendResponseHeaders(404, error.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(error);
+                    }
+                    return;
+                }
+                exchange.sendResponseHeaders(200, data.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(data);
+                }
+            }
+            case "DELETE" -> {
+                objects.remove(path);
+                exchange.sendResponseHeaders(204, -1);
+            }
+            default -> exchange.sendResponseHeaders(405, -1);
+        }
+        exchange.close();
+    }
+
+    /** Тялото на PUT; през http SDK-то праща aws-chunked (hex размер;chunk-signature=…). */
+    private static byte[] body(HttpExchange exchange) throws IOException {
+        byte[] raw = exchange.getRequestBody().readAllBytes();
+        String sha = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        if (sha == null || !sha.startsWith("STREAMING-")) {
+            return raw;
+        }
+        InputStream in = new ByteArrayInputStream(raw);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        while (true) {
+            String header = readLine(in);
+            int size = Integer.parseInt(header.split(";", 2)[0].trim(), 16);
+            if (size == 0) {
+                return out.toByteArray();
+            }
+            out.write(in.readNBytes(size));
+            readLine(in); // \r\n след данните
+        }
+    }
+
+    private static String md5(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) >= 0 && b != '\n') {
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+}